@@ -10,13 +10,15 @@ import org.monxef.gbank.managers.PluginManager;
 import org.monxef.gbank.objects.TransactionLogger;
 import org.monxef.gbank.objects.YamlConfigLoader;
 import org.monxef.gbank.storage.StorageHandler;
-import org.monxef.gbank.storage.impl.JsonStorageHandler;
-import org.monxef.gbank.storage.impl.MongoDBStorageHandler;
-import org.monxef.gbank.storage.impl.MySQLStorageHandler;
+import org.monxef.gbank.storage.StorageHandlerFactory;
+import org.monxef.gbank.storage.history.RetentionPolicy;
 import org.monxef.gbank.tasks.AutomaticPaymentTask;
 import org.monxef.gbank.tasks.PluginLoadingTask;
+import org.monxef.gbank.tasks.TransactionRetentionTask;
 import org.monxef.gbank.wrappers.ConfigWrapper;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class GBank extends JavaPlugin {
@@ -44,49 +46,54 @@ public class GBank extends JavaPlugin {
     @Override
     public void onEnable() {
 
-        transactionLogger = new TransactionLogger(this);
         prefix = ConfigWrapper.valueOf(ConfigurationType.MESSAGE).getString("prefix");
         saveDefaultConfig();
+        // Currencies are loaded first, storage converts stored amounts with their decimals
+        new PluginLoadingTask().run();
+
         initializeStorage();
+        transactionLogger = new TransactionLogger(this);
 
         startAutomaticPayments();
-
-        new PluginLoadingTask().run();
+        startTransactionRetention();
 
         getLogger().info("GBank has been enabled!");
     }
 
 
+    @Override
+    public void onDisable() {
+        getServer().getScheduler().cancelTasks(this);
+
+        Duration timeout = Duration.ofSeconds(getConfig().getLong("storage.shutdown-timeout", 10));
+        if (transactionLogger != null) {
+            transactionLogger.close(timeout);
+        }
+        if (storageHandler != null && !storageHandler.close(timeout)) {
+            getLogger().warning("Storage did not finish pending writes within " + timeout.getSeconds() + " seconds!");
+        }
+
+        getLogger().info("GBank has been disabled!");
+    }
+
     private void initializeStorage() {
         String storageType = getConfig().getString("storage.type", "JSON");
 
+        StorageHandler handler = null;
         try {
-            switch (storageType.toUpperCase()) {
-                case "JSON":
-                    storageHandler = new JsonStorageHandler(this);
-                    break;
-                case "MONGODB":
-                    String uri = getConfig().getString("storage.mongodb.uri");
-                    storageHandler = new MongoDBStorageHandler(uri);
-                    break;
-                case "MYSQL":
-                    String host = getConfig().getString("storage.mysql.host");
-                    int port = getConfig().getInt("storage.mysql.port");
-                    String database = getConfig().getString("storage.mysql.database");
-                    String user = getConfig().getString("storage.mysql.user");
-                    String password = getConfig().getString("storage.mysql.password");
-                    Boolean ssl = getConfig().getBoolean("storage.mysql.ssl");
-                    storageHandler = new MySQLStorageHandler(host, port, database, user, password,ssl);
-                    break;
-                default:
-                    getLogger().warning("Invalid storage type! Defaulting to JSON storage.");
-                    storageHandler = new JsonStorageHandler(this);
-            }
+            handler = StorageHandlerFactory.create(this, storageType);
+            handler.start();
         } catch (Exception e) {
             getLogger().log(Level.SEVERE, "Failed to initialize storage handler", e);
             getLogger().warning("Defaulting to JSON storage due to error.");
-            storageHandler = new JsonStorageHandler(this);
+            if (handler != null) {
+                // Created but failed to start, release its connections
+                handler.close(Duration.ZERO);
+            }
+            handler = StorageHandlerFactory.create(this, "JSON");
+            handler.start();
         }
+        storageHandler = handler;
     }
     private void startAutomaticPayments() {
         long interval = getConfig().getLong("payment_interval", 60) * 20L; // Convert to ticks
@@ -95,4 +102,23 @@ public class GBank extends JavaPlugin {
         new AutomaticPaymentTask(this, amount).runTaskTimer(this, interval, interval);
     }
 
+    private void startTransactionRetention() {
+        if (!getConfig().getBoolean("transactions.retention.enabled", false)) {
+            return;
+        }
+
+        RetentionPolicy policy = new RetentionPolicy(
+                getConfig().getInt("transactions.audit-history-limit", 50),
+                TimeUnit.DAYS.toMillis(getConfig().getLong("transactions.retention.max-age-days", 0)));
+        if (policy.keepsAll()) {
+            return;
+        }
+
+        long stepInterval = Math.max(1, getConfig().getLong("transactions.retention.step-interval", 1)) * 20L; // Convert to ticks
+        new TransactionRetentionTask(this, policy,
+                getConfig().getInt("transactions.retention.batch-size", 50),
+                Duration.ofMinutes(getConfig().getLong("transactions.retention.pass-interval", 60)))
+                .runTaskTimer(this, stepInterval, stepInterval);
+    }
+
 }
\ No newline at end of file
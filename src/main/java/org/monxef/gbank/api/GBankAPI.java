@@ -2,6 +2,7 @@ package org.monxef.gbank.api;
 
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.managers.PluginManager;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.PlayerProfile;
 
 import java.util.HashMap;
@@ -36,6 +37,26 @@ public class GBankAPI {
                                 .orElse(0.0));
     }
 
+    /**
+     * Get a player's exact balance for a specific currency
+     *
+     * @param playerId The UUID of the player
+     * @param currency The currency code
+     * @return CompletableFuture containing the balance in minor units of the currency
+     * @throws IllegalArgumentException if currency doesn't exist
+     */
+    public static CompletableFuture<Long> getMinorBalance(UUID playerId, String currency) {
+        if (!PluginManager.getInstance().getCurrenciesManager().getManager().containsKey(currency)) {
+            throw new IllegalArgumentException("Invalid currency: " + currency);
+        }
+
+        return plugin.getStorageHandler()
+                .loadProfile(playerId)
+                .thenApply(optionalProfile ->
+                        optionalProfile.map(profile -> profile.getMinor(currency))
+                                .orElse(0L));
+    }
+
     /**
      * Get all balances for a player
      *
@@ -67,43 +88,36 @@ public class GBankAPI {
                     TransactionResult.failure("Invalid currency"));
         }
 
-        double taxAmount = applyTax ? amount * PluginManager.getInstance().getTaxRate() : 0;
-        double finalAmount = amount - taxAmount;
-
-        return plugin.getStorageHandler().loadProfile(from)
-                .thenCompose(fromProfile -> {
-                    if (!fromProfile.isPresent()) {
-                        return CompletableFuture.completedFuture(
-                                TransactionResult.failure("Source profile not found"));
-                    }
-
-                    if (fromProfile.get().getBalance(currency) < amount) {
-                        return CompletableFuture.completedFuture(
-                                TransactionResult.failure("Insufficient funds"));
-                    }
-
-                    return plugin.getStorageHandler().loadProfile(to)
-                            .thenCompose(toProfile -> {
-                                if (!toProfile.isPresent()) {
-                                    return CompletableFuture.completedFuture(
-                                            TransactionResult.failure("Destination profile not found"));
-                                }
-
-                                PlayerProfile source = fromProfile.get();
-                                PlayerProfile dest = toProfile.get();
-
-                                source.removeBalance(currency, amount);
-                                dest.addBalance(currency, finalAmount);
-
-                                CompletableFuture<Void> saveSrc = plugin.getStorageHandler()
-                                        .saveProfile(source);
-                                CompletableFuture<Void> saveDst = plugin.getStorageHandler()
-                                        .saveProfile(dest);
-
-                                return CompletableFuture.allOf(saveSrc, saveDst)
-                                        .thenApply(v -> TransactionResult.success(taxAmount));
-                            });
-                });
+        int scale = PluginManager.getInstance().getCurrenciesManager().scale(currency);
+        return transferMinor(from, to, currency, Money.of(amount, scale), applyTax);
+    }
+
+    /**
+     * Transfer currency between players, in minor units of the currency (cents
+     * for a currency with two decimals)
+     *
+     * @param from Source player UUID
+     * @param to Destination player UUID
+     * @param currency Currency code
+     * @param amount Amount to transfer in minor units
+     * @param applyTax Whether to apply transaction tax, the tax rate is a percent
+     * @return CompletableFuture containing transaction success status
+     */
+    public static CompletableFuture<TransactionResult> transferMinor(
+            UUID from, UUID to, String currency, long amount, boolean applyTax) {
+        if (!PluginManager.getInstance().getCurrenciesManager().getManager().containsKey(currency)) {
+            return CompletableFuture.completedFuture(
+                    TransactionResult.failure("Invalid currency"));
+        }
+
+        long taxAmount = applyTax ? Money.percent(amount, PluginManager.getInstance().getTaxRate()) : 0;
+        long finalAmount = amount - taxAmount;
+        int scale = PluginManager.getInstance().getCurrenciesManager().scale(currency);
+
+        return plugin.getStorageHandler().transfer(from, to, currency, amount, finalAmount)
+                .thenApply(transferred -> transferred
+                        ? TransactionResult.success(Money.toDouble(taxAmount, scale))
+                        : TransactionResult.failure("Insufficient funds"));
     }
 }
 
@@ -7,6 +7,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.menus.BalanceGUI;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.utils.MessagesUtils;
 
@@ -81,10 +82,10 @@ public class BalanceCommand implements CommandExecutor {
 
     private void sendBalanceSummary(CommandSender sender, String targetPlayer, PlayerProfile profile) {
         sender.sendMessage(MessagesUtils.getMessage("balance_summary_header", "player", targetPlayer));
-        profile.getBalances().forEach((currency, amount) -> {
+        profile.forEachMinor((currency, amount) -> {
             sender.sendMessage(MessagesUtils.getMessage("balance_summary_line",
                     "currency", currency,
-                    "amount", String.format("%.2f", amount)));
+                    "amount", Money.format(amount, Money.scale(currency))));
         });
     }
 }
\ No newline at end of file
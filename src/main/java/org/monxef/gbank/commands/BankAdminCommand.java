@@ -10,9 +10,11 @@ import org.bukkit.entity.Player;
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.enums.TransactionType;
 import org.monxef.gbank.managers.PluginManager;
-import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.objects.Currency;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.history.TransactionCursor;
+import org.monxef.gbank.storage.history.TransactionQuery;
 import org.monxef.gbank.utils.MessagesUtils;
 
 import java.util.*;
@@ -22,7 +24,7 @@ import java.util.stream.Collectors;
 public class BankAdminCommand implements CommandExecutor, TabCompleter {
     private final GBank plugin;
     private final Set<String> validCommands = Set.of(
-            "give", "take", "set", "transfer", "audit"
+            "give", "take", "set", "transfer", "audit", "stats"
     );
 
     public BankAdminCommand(GBank plugin) {
@@ -48,6 +50,7 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
                 case "set" -> handleSetCommand(sender, args);
                 case "transfer" -> handleTransferCommand(sender, args);
                 case "audit" -> handleAuditCommand(sender, args);
+                case "stats" -> handleStatsCommand(sender);
                 default -> {
                     sendHelpMessage(sender);
                     yield true;
@@ -70,15 +73,6 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         String playerName = args[1];
         OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(playerName);
 
-        double amount;
-        try {
-            amount = Double.parseDouble(args[2]);
-            if (amount <= 0) throw new NumberFormatException();
-        } catch (NumberFormatException e) {
-            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
-            return true;
-        }
-
         String currencyCode = args[3].toLowerCase();
         Currency currency = PluginManager.getInstance().getCurrenciesManager().get(currencyCode);
         if (currency == null) {
@@ -86,46 +80,46 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        CompletableFuture<Optional<PlayerProfile>> profileFuture = plugin.getStorageHandler()
-                .loadProfile(targetPlayer.getUniqueId());
-
-        profileFuture.thenAccept(optionalProfile -> {
-            PlayerProfile profile = optionalProfile.orElseGet(() -> 
-                    new PlayerProfile(targetPlayer.getUniqueId()));
-            
-            profile.addBalance(currencyCode, amount);
-
-            plugin.getStorageHandler().saveProfile(profile)
-                    .thenRun(() -> {
-                        Transaction transaction = new Transaction(
-                                TransactionType.DEPOSIT,
-                                amount,
-                                "Admin give command by " + sender.getName()
-                        );
-
-                        plugin.getTransactionLogger()
-                                .logTransaction(targetPlayer.getUniqueId(), currencyCode, transaction)
-                                .thenRun(() -> {
-                                    sender.sendMessage(MessagesUtils.getMessage("admin.give_success")
+        long amount;
+        try {
+            amount = Money.parse(args[2], currency.getScale());
+            if (amount <= 0) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
+            return true;
+        }
+
+        plugin.getStorageHandler().credit(targetPlayer.getUniqueId(), currencyCode, amount)
+                .thenRun(() -> {
+                    Transaction transaction = new Transaction(
+                            TransactionType.DEPOSIT,
+                            amount,
+                            currency,
+                            "Admin give command by " + sender.getName()
+                    );
+
+                    plugin.getTransactionLogger()
+                            .logTransaction(targetPlayer.getUniqueId(), currencyCode, transaction)
+                            .thenRun(() -> {
+                                sender.sendMessage(MessagesUtils.getMessage("admin.give_success")
+                                        .replace("{prefix}", MessagesUtils.getPrefix())
+                                        .replace("{player}", playerName)
+                                        .replace("{amount}", Money.format(amount, currency.getScale()))
+                                        .replace("{currency}", currency.getDisplayName()));
+
+                                Player target = Bukkit.getPlayer(targetPlayer.getUniqueId());
+                                if (target != null && target.isOnline()) {
+                                    target.sendMessage(MessagesUtils.getMessage("player.received_admin_payment")
                                             .replace("{prefix}", MessagesUtils.getPrefix())
-                                            .replace("{player}", playerName)
-                                            .replace("{amount}", String.format("%.2f", amount))
+                                            .replace("{amount}", Money.format(amount, currency.getScale()))
                                             .replace("{currency}", currency.getDisplayName()));
-
-                                    Player target = Bukkit.getPlayer(targetPlayer.getUniqueId());
-                                    if (target != null && target.isOnline()) {
-                                        target.sendMessage(MessagesUtils.getMessage("player.received_admin_payment")
-                                                .replace("{prefix}", MessagesUtils.getPrefix())
-                                                .replace("{amount}", String.format("%.2f", amount))
-                                                .replace("{currency}", currency.getDisplayName()));
-                                    }
-                                });
-                    });
-        }).exceptionally(e -> {
-            sender.sendMessage(MessagesUtils.getMessage("command_error"));
-            plugin.getLogger().severe("Error in give command: " + e.getMessage());
-            return null;
-        });
+                                }
+                            });
+                }).exceptionally(e -> {
+                    sender.sendMessage(MessagesUtils.getMessage("command_error"));
+                    plugin.getLogger().severe("Error in give command: " + e.getMessage());
+                    return null;
+                });
 
         return true;
     }
@@ -139,15 +133,6 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         String playerName = args[1];
         OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(playerName);
 
-        double amount;
-        try {
-            amount = Double.parseDouble(args[2]);
-            if (amount <= 0) throw new NumberFormatException();
-        } catch (NumberFormatException e) {
-            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
-            return true;
-        }
-
         String currencyCode = args[3].toLowerCase();
         Currency currency = PluginManager.getInstance().getCurrenciesManager().get(currencyCode);
         if (currency == null) {
@@ -155,45 +140,45 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        plugin.getStorageHandler().loadProfile(targetPlayer.getUniqueId())
-                .thenAccept(optionalProfile -> {
-                    if (optionalProfile.isEmpty()) {
-                        sender.sendMessage(MessagesUtils.getMessage("player_not_found"));
-                        return;
-                    }
+        long amount;
+        try {
+            amount = Money.parse(args[2], currency.getScale());
+            if (amount <= 0) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
+            return true;
+        }
 
-                    PlayerProfile profile = optionalProfile.get();
-                    if (!profile.hasBalance(currencyCode, amount)) {
+        plugin.getStorageHandler().debit(targetPlayer.getUniqueId(), currencyCode, amount)
+                .thenAccept(debited -> {
+                    if (!debited) {
                         sender.sendMessage(MessagesUtils.getMessage("insufficient_funds"));
                         return;
                     }
 
-                    profile.removeBalance(currencyCode, amount);
-                    plugin.getStorageHandler().saveProfile(profile)
+                    Transaction transaction = new Transaction(
+                            TransactionType.WITHDRAWAL,
+                            amount,
+                            currency,
+                            "Admin take command by " + sender.getName()
+                    );
+
+                    plugin.getTransactionLogger()
+                            .logTransaction(targetPlayer.getUniqueId(), currencyCode, transaction)
                             .thenRun(() -> {
-                                Transaction transaction = new Transaction(
-                                        TransactionType.WITHDRAWAL,
-                                        amount,
-                                        "Admin take command by " + sender.getName()
-                                );
-
-                                plugin.getTransactionLogger()
-                                        .logTransaction(targetPlayer.getUniqueId(), currencyCode, transaction)
-                                        .thenRun(() -> {
-                                            sender.sendMessage(MessagesUtils.getMessage("admin.take_success")
-                                                    .replace("{prefix}", MessagesUtils.getPrefix())
-                                                    .replace("{player}", playerName)
-                                                    .replace("{amount}", String.format("%.2f", amount))
-                                                    .replace("{currency}", currency.getDisplayName()));
-
-                                            Player target = Bukkit.getPlayer(targetPlayer.getUniqueId());
-                                            if (target != null && target.isOnline()) {
-                                                target.sendMessage(MessagesUtils.getMessage("player.money_taken_by_admin")
-                                                        .replace("{prefix}", MessagesUtils.getPrefix())
-                                                        .replace("{amount}", String.format("%.2f", amount))
-                                                        .replace("{currency}", currency.getDisplayName()));
-                                            }
-                                        });
+                                sender.sendMessage(MessagesUtils.getMessage("admin.take_success")
+                                        .replace("{prefix}", MessagesUtils.getPrefix())
+                                        .replace("{player}", playerName)
+                                        .replace("{amount}", Money.format(amount, currency.getScale()))
+                                        .replace("{currency}", currency.getDisplayName()));
+
+                                Player target = Bukkit.getPlayer(targetPlayer.getUniqueId());
+                                if (target != null && target.isOnline()) {
+                                    target.sendMessage(MessagesUtils.getMessage("player.money_taken_by_admin")
+                                            .replace("{prefix}", MessagesUtils.getPrefix())
+                                            .replace("{amount}", Money.format(amount, currency.getScale()))
+                                            .replace("{currency}", currency.getDisplayName()));
+                                }
                             });
                 }).exceptionally(e -> {
                     sender.sendMessage(MessagesUtils.getMessage("command_error"));
@@ -213,15 +198,6 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         String playerName = args[1];
         OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(playerName);
 
-        double amount;
-        try {
-            amount = Double.parseDouble(args[2]);
-            if (amount < 0) throw new NumberFormatException();
-        } catch (NumberFormatException e) {
-            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
-            return true;
-        }
-
         String currencyCode = args[3].toLowerCase();
         Currency currency = PluginManager.getInstance().getCurrenciesManager().get(currencyCode);
         if (currency == null) {
@@ -229,38 +205,40 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        plugin.getStorageHandler().loadProfile(targetPlayer.getUniqueId())
-                .thenAccept(optionalProfile -> {
-                    PlayerProfile profile = optionalProfile.orElseGet(() -> 
-                            new PlayerProfile(targetPlayer.getUniqueId()));
-                    
-                    profile.setBalance(currencyCode, amount);
+        long amount;
+        try {
+            amount = Money.parse(args[2], currency.getScale());
+            if (amount < 0) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
+            return true;
+        }
 
-                    plugin.getStorageHandler().saveProfile(profile)
+        plugin.getStorageHandler().setBalance(targetPlayer.getUniqueId(), currencyCode, amount)
+                .thenRun(() -> {
+                    Transaction transaction = new Transaction(
+                            TransactionType.ADMIN_SET,
+                            amount,
+                            currency,
+                            "Admin set command by " + sender.getName()
+                    );
+
+                    plugin.getTransactionLogger()
+                            .logTransaction(targetPlayer.getUniqueId(), currencyCode, transaction)
                             .thenRun(() -> {
-                                Transaction transaction = new Transaction(
-                                        TransactionType.ADMIN_SET,
-                                        amount,
-                                        "Admin set command by " + sender.getName()
-                                );
-
-                                plugin.getTransactionLogger()
-                                        .logTransaction(targetPlayer.getUniqueId(), currencyCode, transaction)
-                                        .thenRun(() -> {
-                                            sender.sendMessage(MessagesUtils.getMessage("admin.set_success")
-                                                    .replace("{prefix}", MessagesUtils.getPrefix())
-                                                    .replace("{player}", playerName)
-                                                    .replace("{amount}", String.format("%.2f", amount))
-                                                    .replace("{currency}", currency.getDisplayName()));
-
-                                            Player target = Bukkit.getPlayer(targetPlayer.getUniqueId());
-                                            if (target != null && target.isOnline()) {
-                                                target.sendMessage(MessagesUtils.getMessage("player.balance_set_by_admin")
-                                                        .replace("{prefix}", MessagesUtils.getPrefix())
-                                                        .replace("{amount}", String.format("%.2f", amount))
-                                                        .replace("{currency}", currency.getDisplayName()));
-                                            }
-                                        });
+                                sender.sendMessage(MessagesUtils.getMessage("admin.set_success")
+                                        .replace("{prefix}", MessagesUtils.getPrefix())
+                                        .replace("{player}", playerName)
+                                        .replace("{amount}", Money.format(amount, currency.getScale()))
+                                        .replace("{currency}", currency.getDisplayName()));
+
+                                Player target = Bukkit.getPlayer(targetPlayer.getUniqueId());
+                                if (target != null && target.isOnline()) {
+                                    target.sendMessage(MessagesUtils.getMessage("player.balance_set_by_admin")
+                                            .replace("{prefix}", MessagesUtils.getPrefix())
+                                            .replace("{amount}", Money.format(amount, currency.getScale()))
+                                            .replace("{currency}", currency.getDisplayName()));
+                                }
                             });
                 }).exceptionally(e -> {
                     sender.sendMessage(MessagesUtils.getMessage("command_error"));
@@ -282,15 +260,6 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         OfflinePlayer fromPlayer = Bukkit.getOfflinePlayer(fromPlayerName);
         OfflinePlayer toPlayer = Bukkit.getOfflinePlayer(toPlayerName);
 
-        double amount;
-        try {
-            amount = Double.parseDouble(args[3]);
-            if (amount <= 0) throw new NumberFormatException();
-        } catch (NumberFormatException e) {
-            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
-            return true;
-        }
-
         String currencyCode = args[4].toLowerCase();
         Currency currency = PluginManager.getInstance().getCurrenciesManager().get(currencyCode);
         if (currency == null) {
@@ -298,60 +267,44 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        CompletableFuture<Optional<PlayerProfile>> fromProfileFuture = 
-                plugin.getStorageHandler().loadProfile(fromPlayer.getUniqueId());
-        CompletableFuture<Optional<PlayerProfile>> toProfileFuture = 
-                plugin.getStorageHandler().loadProfile(toPlayer.getUniqueId());
-
-        CompletableFuture.allOf(fromProfileFuture, toProfileFuture)
-                .thenRun(() -> {
-                    Optional<PlayerProfile> fromProfileOpt = fromProfileFuture.join();
-                    Optional<PlayerProfile> toProfileOpt = toProfileFuture.join();
-
-                    if (fromProfileOpt.isEmpty()) {
-                        sender.sendMessage(MessagesUtils.getMessage("player_not_found"));
-                        return;
-                    }
-
-                    PlayerProfile fromProfile = fromProfileOpt.get();
-                    PlayerProfile toProfile = toProfileOpt.orElseGet(() -> 
-                            new PlayerProfile(toPlayer.getUniqueId()));
+        long amount;
+        try {
+            amount = Money.parse(args[3], currency.getScale());
+            if (amount <= 0) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
+            return true;
+        }
 
-                    if (!fromProfile.hasBalance(currencyCode, amount)) {
+        plugin.getStorageHandler().transfer(fromPlayer.getUniqueId(), toPlayer.getUniqueId(), currencyCode, amount, amount)
+                .thenAccept(transferred -> {
+                    if (!transferred) {
                         sender.sendMessage(MessagesUtils.getMessage("insufficient_funds"));
                         return;
                     }
 
-                    fromProfile.removeBalance(currencyCode, amount);
-                    toProfile.addBalance(currencyCode, amount);
+                    Transaction transaction = new Transaction(
+                            TransactionType.ADMIN_TRANSFER,
+                            amount,
+                            currency,
+                            "Admin transfer from " + fromPlayerName + " to " + toPlayerName
+                    );
 
-                    CompletableFuture<Void> fromSave = plugin.getStorageHandler().saveProfile(fromProfile);
-                    CompletableFuture<Void> toSave = plugin.getStorageHandler().saveProfile(toProfile);
+                    CompletableFuture<Void> fromLog = plugin.getTransactionLogger()
+                            .logTransaction(fromPlayer.getUniqueId(), currencyCode, transaction);
+                    CompletableFuture<Void> toLog = plugin.getTransactionLogger()
+                            .logTransaction(toPlayer.getUniqueId(), currencyCode, transaction);
 
-                    CompletableFuture.allOf(fromSave, toSave)
+                    CompletableFuture.allOf(fromLog, toLog)
                             .thenRun(() -> {
-                                Transaction transaction = new Transaction(
-                                        TransactionType.ADMIN_TRANSFER,
-                                        amount,
-                                        "Admin transfer from " + fromPlayerName + " to " + toPlayerName
-                                );
-
-                                CompletableFuture<Void> fromLog = plugin.getTransactionLogger()
-                                        .logTransaction(fromPlayer.getUniqueId(), currencyCode, transaction);
-                                CompletableFuture<Void> toLog = plugin.getTransactionLogger()
-                                        .logTransaction(toPlayer.getUniqueId(), currencyCode, transaction);
-
-                                CompletableFuture.allOf(fromLog, toLog)
-                                        .thenRun(() -> {
-                                            sender.sendMessage(MessagesUtils.getMessage("admin.transfer_success")
-                                                    .replace("{prefix}", MessagesUtils.getPrefix())
-                                                    .replace("{amount}", String.format("%.2f", amount))
-                                                    .replace("{currency}", currency.getDisplayName())
-                                                    .replace("{from}", fromPlayerName)
-                                                    .replace("{to}", toPlayerName));
-
-                                            notifyPlayers(fromPlayer, toPlayer, amount, currency);
-                                        });
+                                sender.sendMessage(MessagesUtils.getMessage("admin.transfer_success")
+                                        .replace("{prefix}", MessagesUtils.getPrefix())
+                                        .replace("{amount}", Money.format(amount, currency.getScale()))
+                                        .replace("{currency}", currency.getDisplayName())
+                                        .replace("{from}", fromPlayerName)
+                                        .replace("{to}", toPlayerName));
+
+                                notifyPlayers(fromPlayer, toPlayer, amount, currency);
                             });
                 }).exceptionally(e -> {
                     sender.sendMessage(MessagesUtils.getMessage("command_error"));
@@ -363,12 +316,12 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
     }
 
     private void notifyPlayers(OfflinePlayer fromPlayer, OfflinePlayer toPlayer, 
-            double amount, Currency currency) {
+            long amount, Currency currency) {
         Player fromPlayerOnline = Bukkit.getPlayer(fromPlayer.getUniqueId());
         if (fromPlayerOnline != null && fromPlayerOnline.isOnline()) {
             fromPlayerOnline.sendMessage(MessagesUtils.getMessage("player.money_transferred_from")
                     .replace("{prefix}", MessagesUtils.getPrefix())
-                    .replace("{amount}", String.format("%.2f", amount))
+                    .replace("{amount}", Money.format(amount, currency.getScale()))
                     .replace("{currency}", currency.getDisplayName())
                     .replace("{player}", toPlayer.getName()));
         }
@@ -377,7 +330,7 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         if (toPlayerOnline != null && toPlayerOnline.isOnline()) {
             toPlayerOnline.sendMessage(MessagesUtils.getMessage("player.money_transferred_to")
                     .replace("{prefix}", MessagesUtils.getPrefix())
-                    .replace("{amount}", String.format("%.2f", amount))
+                    .replace("{amount}", Money.format(amount, currency.getScale()))
                     .replace("{currency}", currency.getDisplayName())
                     .replace("{player}", fromPlayer.getName()));
         }
@@ -385,7 +338,7 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
 
     private boolean handleAuditCommand(CommandSender sender, String[] args) {
         if (args.length < 2) {
-            sender.sendMessage(MessagesUtils.getPrefix() + "§cUsage: /bank audit <player> [limit] [currency]");
+            sender.sendMessage(MessagesUtils.getPrefix() + "§cUsage: /bank audit <player> [limit] [currency] [page]");
             return true;
         }
 
@@ -413,10 +366,29 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
             currencyCode = currency.getId();
         }
 
+        TransactionCursor after = null;
+        if (args.length > 4) {
+            try {
+                after = TransactionCursor.parse(args[4]);
+            } catch (IllegalArgumentException e) {
+                sender.sendMessage(MessagesUtils.getPrefix() + "§cInvalid page");
+                return true;
+            }
+        }
+
+        TransactionQuery query = TransactionQuery.builder()
+                .playerId(targetPlayer.getUniqueId())
+                .currency(currencyCode)
+                .limit(limit)
+                .after(after)
+                .build();
+
         final String finalCurrencyCode = currencyCode;
+        final int finalLimit = limit;
         plugin.getTransactionLogger()
-                .getTransactions(targetPlayer.getUniqueId(), currencyCode, limit)
-                .thenAccept(transactions -> {
+                .getTransactions(query)
+                .thenAccept(page -> {
+                    List<Transaction> transactions = page.transactions();
                     if (transactions.isEmpty()) {
                         sender.sendMessage(MessagesUtils.getPrefix() + "§cNo transactions found");
                         return;
@@ -426,15 +398,20 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
                     
                     for (Transaction transaction : transactions) {
                         sender.sendMessage(String.format(
-                            "%s§e%s: %.2f %s - %s - %s",
+                            "%s§e%s: %s %s - %s - %s",
                             MessagesUtils.getPrefix(),
                             transaction.getType(),
-                            transaction.getAmount(),
+                            Money.format(transaction.getAmount(), transaction.getScale()),
                             PluginManager.getInstance().getCurrenciesManager().get(finalCurrencyCode).getDisplayName(),
                             new Date(transaction.getTimestamp()).toString(),
                             transaction.getDetails()
                         ));
                     }
+
+                    if (page.hasMore()) {
+                        sender.sendMessage(MessagesUtils.getPrefix() + "§7Next page: §e/bank audit " + playerName
+                                + " " + finalLimit + " " + finalCurrencyCode + " " + page.next());
+                    }
                 }).exceptionally(e -> {
                     sender.sendMessage(MessagesUtils.getPrefix() + "§cAn error occurred while fetching transactions");
                     plugin.getLogger().severe("Error in audit command: " + e.getMessage());
@@ -444,6 +421,13 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private boolean handleStatsCommand(CommandSender sender) {
+        sender.sendMessage(MessagesUtils.getPrefix() + "§6=== Storage Statistics ===");
+        plugin.getStorageHandler().getStatistics().forEach((name, value) ->
+                sender.sendMessage(MessagesUtils.getPrefix() + "§e" + name + ": §7" + value));
+        return true;
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (!sender.hasPermission("gbank.admin")) {
@@ -451,7 +435,7 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         }
 
         if (args.length == 1) {
-            return List.of("give", "take", "set", "transfer", "audit")
+            return List.of("give", "take", "set", "transfer", "audit", "stats")
                     .stream()
                     .filter(cmd -> cmd.startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
@@ -503,7 +487,8 @@ public class BankAdminCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(MessagesUtils.getPrefix() + "§e/bank take <player> <amount> <currency> §7- Take money from a player");
         sender.sendMessage(MessagesUtils.getPrefix() + "§e/bank set <player> <amount> <currency> §7- Set player's balance");
         sender.sendMessage(MessagesUtils.getPrefix() + "§e/bank transfer <from> <to> <amount> <currency> §7- Transfer money between players");
-        sender.sendMessage(MessagesUtils.getPrefix() + "§e/bank audit <player> [limit] [currency] §7- View transaction history");
+        sender.sendMessage(MessagesUtils.getPrefix() + "§e/bank audit <player> [limit] [currency] [page] §7- View transaction history");
+        sender.sendMessage(MessagesUtils.getPrefix() + "§e/bank stats §7- View storage cache and queue statistics");
         sender.sendMessage(MessagesUtils.getPrefix() + "§6==========================");
     }
 }
\ No newline at end of file
@@ -8,14 +8,11 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.managers.PluginManager;
-import org.monxef.gbank.objects.PlayerProfile;
 
 import org.monxef.gbank.objects.Currency;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.utils.MessagesUtils;
 
-import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-
 public class PayCommand implements CommandExecutor {
     private final GBank plugin;
 
@@ -42,32 +39,31 @@ public class PayCommand implements CommandExecutor {
 
         String targetName = args[0];
         String currencyCode = args[1];
-        double amount;
 
+        Currency currency = PluginManager.getInstance().getCurrenciesManager().get(currencyCode);
+        if (currency == null) {
+            sender.sendMessage(MessagesUtils.getMessage("invalid_currency"));
+            return true;
+        }
+
+        long amount;
         try {
-            amount = Double.parseDouble(args[2]);
+            amount = Money.parse(args[2], currency.getScale());
             if (amount <= 0) throw new NumberFormatException();
         } catch (NumberFormatException e) {
             sender.sendMessage(MessagesUtils.getMessage("invalid_amount"));
             return true;
         }
 
-        Currency currency = PluginManager.getInstance().getCurrenciesManager().get(currencyCode);
-        if (currency == null) {
-            sender.sendMessage(MessagesUtils.getMessage("invalid_currency"));
-            return true;
-        }
-
         Player target = Bukkit.getPlayer(targetName);
         if (target == null) {
             sender.sendMessage(MessagesUtils.getMessage("player_not_found"));
             return true;
         }
 
-        // Calculate tax
-        double taxRate = PluginManager.getInstance().getTaxRate();
-        double taxAmount = amount * taxRate;
-        double finalAmount = amount - taxAmount;
+        // Calculate tax, the rate is a percent
+        long taxAmount = Money.percent(amount, PluginManager.getInstance().getTaxRate());
+        long finalAmount = amount - taxAmount;
 
         // Process payment
         Player payer = (Player) sender;
@@ -76,48 +72,29 @@ public class PayCommand implements CommandExecutor {
         return true;
     }
 
-    private void processPayment(Player from, Player to, Currency currency, double originalAmount,
-                                double finalAmount, double taxAmount) {
-        CompletableFuture<Optional<PlayerProfile>> fromProfileFuture =
-                plugin.getStorageHandler().loadProfile(from.getUniqueId());
-        CompletableFuture<Optional<PlayerProfile>> toProfileFuture =
-                plugin.getStorageHandler().loadProfile(to.getUniqueId());
-
-        CompletableFuture.allOf(fromProfileFuture, toProfileFuture)
-                .thenAccept(v -> {
-                    Optional<PlayerProfile> fromProfile = fromProfileFuture.join();
-                    Optional<PlayerProfile> toProfile = toProfileFuture.join();
-
-                    if (!fromProfile.isPresent() || !toProfile.isPresent()) {
-                        from.sendMessage(MessagesUtils.getMessage("transaction_failed"));
-                        return;
-                    }
-
-                    PlayerProfile payer = fromProfile.get();
-                    PlayerProfile receiver = toProfile.get();
-
-                    if (!payer.removeBalance(currency.getId(), originalAmount)) {
+    private void processPayment(Player from, Player to, Currency currency, long originalAmount,
+                                long finalAmount, long taxAmount) {
+        plugin.getStorageHandler()
+                .transfer(from.getUniqueId(), to.getUniqueId(), currency.getId(), originalAmount, finalAmount)
+                .thenAccept(transferred -> {
+                    if (!transferred) {
                         from.sendMessage(MessagesUtils.getMessage("insufficient_funds"));
                         return;
                     }
 
-                    receiver.addBalance(currency.getId(), finalAmount);
-
-                    // Save both profiles
-                    CompletableFuture<Void> saveFrom = plugin.getStorageHandler().saveProfile(payer);
-                    CompletableFuture<Void> saveTo = plugin.getStorageHandler().saveProfile(receiver);
-
-                    CompletableFuture.allOf(saveFrom, saveTo)
-                            .thenRun(() -> {
-                                from.sendMessage(MessagesUtils.getMessage("payment_sent",
-                                        "amount", currency.getSymbol() + String.format("%.2f", originalAmount),
-                                        "target", to.getName(),
-                                        "tax", String.format("%.2f", taxAmount)));
-
-                                to.sendMessage(MessagesUtils.getMessage("payment_received",
-                                        "amount", currency.getSymbol() + String.format("%.2f", finalAmount),
-                                        "from", from.getName()));
-                            });
+                    from.sendMessage(MessagesUtils.getMessage("payment_sent",
+                            "amount", currency.format(originalAmount),
+                            "target", to.getName(),
+                            "tax", Money.format(taxAmount, currency.getScale())));
+
+                    to.sendMessage(MessagesUtils.getMessage("payment_received",
+                            "amount", currency.format(finalAmount),
+                            "from", from.getName()));
+                })
+                .exceptionally(throwable -> {
+                    from.sendMessage(MessagesUtils.getMessage("transaction_failed"));
+                    throwable.printStackTrace();
+                    return null;
                 });
     }
-}
\ No newline at end of file
+}
@@ -6,16 +6,22 @@ import org.bukkit.Material;
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.enums.ConfigurationType;
 import org.monxef.gbank.objects.Currency;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.YamlConfigLoader;
 import org.monxef.gbank.wrappers.ConfigWrapper;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CurrenciesManager {
 
     @Getter
-    private Map<String, Currency> manager = new HashMap<>();
+    private Map<String, Currency> manager = new ConcurrentHashMap<>();
+    // Registered currencies indexed by ordinal, replaced on every registration
+    @Getter
+    private volatile List<Currency> ordered = List.of();
     @Getter @Setter
     private Currency defaultCurrency;
     public void loadAll() {
@@ -26,7 +32,13 @@ public class CurrenciesManager {
                 Material material = Material.getMaterial(config.getConfig().getString("currencies." + key + ".display-material","GOLD_INGOT"));
                 String symbol = config.getString("currencies." + key + ".symbol");
                 int slot = config.getConfig().getInt("currencies." + key + ".slot");
-                register(key, new Currency(key, displayName, material, symbol, slot));
+                int scale = config.getConfig().getInt("currencies." + key + ".decimals", Money.DEFAULT_SCALE);
+                if (scale < 0 || scale > Money.MAX_SCALE) {
+                    GBank.getPlugin().getLogger().warning("Currency " + key + " must have 0 to " + Money.MAX_SCALE
+                            + " decimals, using " + Money.DEFAULT_SCALE + ".");
+                    scale = Money.DEFAULT_SCALE;
+                }
+                register(key, new Currency(key, displayName, material, symbol, slot, scale));
             }
         }
         GBank.getPlugin().getLogger().info("The plugin has loaded "+manager.size()+" currencies.");
@@ -38,10 +50,34 @@ public class CurrenciesManager {
         return null;
     }
 
-    public void register(String key, Currency currency){
+    public synchronized void register(String key, Currency currency){
         if(getManager().containsValue(currency)) return;
+        currency.setOrdinal(ordered.size());
+        List<Currency> next = new ArrayList<>(ordered);
+        next.add(currency);
+        ordered = List.copyOf(next);
         getManager().put(key, currency);
     }
+
+    /**
+     * @return The dense ordinal of the currency, or -1 if it is not registered
+     */
+    public int ordinal(String id) {
+        Currency currency = manager.get(id);
+        return currency != null ? currency.getOrdinal() : -1;
+    }
+
+    /**
+     * @return The decimals of the currency, or {@link Money#DEFAULT_SCALE} if it is not registered
+     */
+    public int scale(String id) {
+        Currency currency = manager.get(id);
+        return currency != null ? currency.getScale() : Money.DEFAULT_SCALE;
+    }
+
+    public int size() {
+        return ordered.size();
+    }
     public boolean contains(ConfigurationType type){
         return getManager().containsKey(type);
     }
@@ -14,6 +14,7 @@ import org.monxef.gbank.GBank;
 import org.monxef.gbank.enums.TransactionType;
 import org.monxef.gbank.managers.PluginManager;
 import org.monxef.gbank.objects.Currency;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.objects.Transaction;
 import org.monxef.gbank.utils.MessagesUtils;
@@ -89,28 +90,32 @@ public class BalanceGUI implements Listener {
         }
 
         PlayerProfile profile = profileOpt.get();
-        Map<Currency, Double> balances = getBalances(profile);
+        List<Currency> currencies = PluginManager.getInstance().getCurrenciesManager().getOrdered();
+        long[] balances = getBalances(profile, currencies);
 
         Bukkit.getScheduler().runTask(plugin, () -> {
-            updateCurrencySlots(balances);
+            updateCurrencySlots(currencies, balances);
             fillEmptySlots();
             addNavigationButtons();
         });
     }
 
-    private Map<Currency, Double> getBalances(PlayerProfile profile) {
-        Map<Currency, Double> balances = new HashMap<>();
-        PluginManager.getInstance().getCurrenciesManager().getManager().values()
-                .forEach(currency -> balances.put(currency, profile.getBalance(currency.getId())));
+    /**
+     * @return The balance of each currency in minor units, indexed by its ordinal
+     */
+    private long[] getBalances(PlayerProfile profile, List<Currency> currencies) {
+        long[] balances = new long[currencies.size()];
+        for (Currency currency : currencies) {
+            balances[currency.getOrdinal()] = profile.getMinor(currency);
+        }
         return balances;
     }
 
-    private void updateCurrencySlots(Map<Currency, Double> balances) {
+    private void updateCurrencySlots(List<Currency> currencies, long[] balances) {
         slotCurrencyMap.clear();
 
-        for (Map.Entry<Currency, Double> entry : balances.entrySet()) {
-            Currency currency = entry.getKey();
-            double balance = entry.getValue();
+        for (Currency currency : currencies) {
+            long balance = balances[currency.getOrdinal()];
 
             int slot = currency.getSlot();
 
@@ -124,7 +129,7 @@ public class BalanceGUI implements Listener {
         }
     }
 
-    private void createCurrencyDisplay(Currency currency, double balance, int slot) {
+    private void createCurrencyDisplay(Currency currency, long balance, int slot) {
         ItemStack item = new ItemStack(currency.getDisplayMaterial());
         ItemMeta meta = item.getItemMeta();
         if (meta == null) return;
@@ -140,9 +145,9 @@ public class BalanceGUI implements Listener {
                 });
     }
 
-    private List<String> createCurrencyLore(Currency currency, double balance) {
+    private List<String> createCurrencyLore(Currency currency, long balance) {
         List<String> lore = new ArrayList<>();
-        String balanceLine = "§bYou have §a" + currency.getSymbol() + String.format("%.2f", balance);
+        String balanceLine = "§bYou have §a" + currency.format(balance);
         lore.add(balanceLine);
         return lore;
     }
@@ -161,7 +166,7 @@ public class BalanceGUI implements Listener {
 
         transactions.forEach(transaction -> {
             String timeStr = DATE_FORMAT.format(new Date(transaction.getTimestamp()));
-            String amountStr = formatTransactionAmount(transaction.getAmount());
+            String amountStr = formatTransactionAmount(transaction);
             
             lore.add(String.format("§7%s §8| %s §8| §7%s",
                 formatTransactionType(transaction.getType()),
@@ -172,8 +177,9 @@ public class BalanceGUI implements Listener {
         return lore;
     }
 
-    private String formatTransactionAmount(double amount) {
-        return (amount >= 0 ? "§a+" : "§c") + String.format("%.2f", Math.abs(amount));
+    private String formatTransactionAmount(Transaction transaction) {
+        long amount = transaction.getAmount();
+        return (amount >= 0 ? "§a+" : "§c") + Money.format(Math.abs(amount), transaction.getScale());
     }
 
     private String formatTransactionType(TransactionType type) {
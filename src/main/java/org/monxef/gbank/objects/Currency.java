@@ -1,6 +1,7 @@
 package org.monxef.gbank.objects;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.bukkit.Material;
 
 @Data
@@ -10,12 +11,32 @@ public class Currency {
     private final Material displayMaterial;
     private final String symbol;
     private final int slot;
+    // Digits after the decimal point, balances are held in units of 10^-scale
+    private final int scale;
+    // Dense index assigned by the CurrenciesManager on registration, -1 until then
+    @EqualsAndHashCode.Exclude
+    private int ordinal = -1;
 
     public Currency(String id, String displayName, Material displayMaterial, String symbol,int slot) {
+        this(id, displayName, displayMaterial, symbol, slot, Money.DEFAULT_SCALE);
+    }
+
+    public Currency(String id, String displayName, Material displayMaterial, String symbol, int slot, int scale) {
+        if (scale < 0 || scale > Money.MAX_SCALE) {
+            throw new IllegalArgumentException("Currency " + id + " must have 0 to " + Money.MAX_SCALE + " decimals");
+        }
         this.id = id;
         this.displayName = displayName;
         this.displayMaterial = displayMaterial;
         this.symbol = symbol;
         this.slot = slot;
+        this.scale = scale;
+    }
+
+    /**
+     * @return The amount with this currency's decimals and symbol
+     */
+    public String format(long minor) {
+        return Money.append(new StringBuilder(symbol != null ? symbol : ""), minor, scale).toString();
     }
 }
\ No newline at end of file
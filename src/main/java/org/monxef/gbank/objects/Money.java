@@ -0,0 +1,161 @@
+package org.monxef.gbank.objects;
+
+import org.monxef.gbank.managers.PluginManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact money arithmetic on {@code long} minor units. An amount of 12.34 in a
+ * currency with a scale of 2 is the long 1234. Amounts only become decimals at
+ * the edges: command input, messages and storage formats that hold decimals.
+ * <p>
+ * Java has no value types, so there is no Money object. These helpers work on
+ * the primitive and the scale of its currency, and formatting can append to a
+ * reused builder.
+ */
+public final class Money {
+    public static final int DEFAULT_SCALE = 2;
+    public static final int MAX_SCALE = 4;
+
+    private static final long[] POWERS = {1, 10, 100, 1000, 10000};
+
+    private Money() {
+    }
+
+    /**
+     * @return The scale of a registered currency, or {@link #DEFAULT_SCALE}
+     */
+    public static int scale(String currency) {
+        PluginManager manager = PluginManager.getInstance();
+        return manager != null ? manager.getCurrenciesManager().scale(currency) : DEFAULT_SCALE;
+    }
+
+    /**
+     * @return Minor units per major unit at the given scale
+     */
+    public static long unit(int scale) {
+        return POWERS[scale];
+    }
+
+    /**
+     * Converts a double, e.g. a config value or an amount given to the API,
+     * rounding to the nearest minor unit.
+     */
+    public static long of(double amount, int scale) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new ArithmeticException("Not a finite amount: " + amount);
+        }
+        return Math.round(amount * POWERS[scale]);
+    }
+
+    /**
+     * Converts a stored decimal, rounding half-even to the scale.
+     */
+    public static long of(BigDecimal amount, int scale) {
+        return amount.setScale(scale, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Parses a decimal typed by a player without going through a double.
+     *
+     * @throws NumberFormatException if the text is not a plain decimal, has more
+     *                               decimals than the scale or does not fit a long
+     */
+    public static long parse(String text, int scale) {
+        int length = text.length();
+        int position = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            position++;
+        }
+
+        long whole = 0;
+        int digits = 0;
+        while (position < length && Character.isDigit(text.charAt(position))) {
+            whole = Math.addExact(Math.multiplyExact(whole, 10), text.charAt(position++) - '0');
+            digits++;
+        }
+
+        long fraction = 0;
+        int decimals = 0;
+        if (position < length && text.charAt(position) == '.') {
+            position++;
+            while (position < length && Character.isDigit(text.charAt(position))) {
+                if (++decimals > scale) {
+                    throw new NumberFormatException("At most " + scale + " decimals are allowed: " + text);
+                }
+                fraction = fraction * 10 + (text.charAt(position++) - '0');
+                digits++;
+            }
+        }
+        if (digits == 0 || position != length) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+
+        try {
+            long minor = Math.addExact(Math.multiplyExact(whole, POWERS[scale]), fraction * POWERS[scale - decimals]);
+            return negative ? -minor : minor;
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount too large: " + text);
+        }
+    }
+
+    /**
+     * Nearest double, for the {@code double} views kept for API consumers.
+     */
+    public static double toDouble(long minor, int scale) {
+        return minor / (double) POWERS[scale];
+    }
+
+    public static BigDecimal toDecimal(long minor, int scale) {
+        return BigDecimal.valueOf(minor, scale);
+    }
+
+    /**
+     * Converts between two scales, rounding half-even when decimals are dropped.
+     */
+    public static long rescale(long minor, int from, int to) {
+        if (from == to) {
+            return minor;
+        }
+        if (to > from) {
+            return Math.multiplyExact(minor, POWERS[to - from]);
+        }
+        return of(BigDecimal.valueOf(minor, from), to);
+    }
+
+    /**
+     * @return {@code percent} percent of the amount, rounded half-up to the minor unit
+     */
+    public static long percent(long minor, long percent) {
+        long product = Math.multiplyExact(minor, percent);
+        return product >= 0 ? (product + 50) / 100 : -((-product + 50) / 100);
+    }
+
+    /**
+     * Appends the amount with exactly {@code scale} decimals, without allocating
+     * beyond the builder's own growth.
+     */
+    public static StringBuilder append(StringBuilder out, long minor, int scale) {
+        if (scale == 0) {
+            return out.append(minor);
+        }
+        if (minor < 0) {
+            out.append('-');
+        }
+
+        long unit = POWERS[scale];
+        long fraction = Math.abs(minor % unit);
+        out.append(Math.abs(minor / unit)).append('.');
+        for (long digit = unit / 10; digit > fraction && digit > 1; digit /= 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    public static String format(long minor, int scale) {
+        return append(new StringBuilder(24), minor, scale).toString();
+    }
+}
@@ -1,48 +1,347 @@
 package org.monxef.gbank.objects;
 
 import lombok.Getter;
+import org.monxef.gbank.managers.CurrenciesManager;
+import org.monxef.gbank.managers.PluginManager;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ObjLongConsumer;
 
+/**
+ * Balances of one player. Currencies changed since the profile was loaded or last
+ * persisted are tracked, so storage handlers can write only those.
+ * <p>
+ * Each balance is an atomic cell of minor units of its currency (see
+ * {@link Money}), held in an array indexed by the currency ordinal. Credits and
+ * debits are lock-free and allocate nothing, so the profile can be shared
+ * between threads. Stored currencies that are not configured, or were
+ * registered after the profile was created, are kept in a small map instead.
+ * The {@code double} and {@code String} methods are a view over the cells.
+ */
 public class PlayerProfile {
     @Getter
     private final UUID playerId;
-    private final Map<String, Double> balances;
+    private final CurrenciesManager currencies;
+    // Balances of the currencies registered when the profile was created, by ordinal
+    private final AtomicLongArray cells;
+    // Bitsets over the ordinals: balances held, and balances changed since the last save
+    private final AtomicLongArray held;
+    private final AtomicLongArray changed;
+    private final Map<String, AtomicLongArray> others = new ConcurrentHashMap<>();
+    private final Set<String> othersChanged = ConcurrentHashMap.newKeySet();
 
     public PlayerProfile(UUID playerId) {
+        this(playerId, PluginManager.getInstance().getCurrenciesManager());
+    }
+
+    public PlayerProfile(UUID playerId, CurrenciesManager currencies) {
         this.playerId = playerId;
-        this.balances = new HashMap<>();
+        this.currencies = currencies;
+        int size = currencies.size();
+        this.cells = new AtomicLongArray(size);
+        this.held = new AtomicLongArray((size + 63) >>> 6);
+        this.changed = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /**
+     * Creates a profile holding balances read from storage, with no pending changes.
+     *
+     * @param stored The balances in minor units of each currency
+     */
+    public PlayerProfile(UUID playerId, Map<String, Long> stored) {
+        this(playerId);
+        stored.forEach((currency, amount) -> {
+            long minor = Math.max(0, amount);
+            int ordinal = ordinal(currency);
+            if (ordinal >= 0) {
+                cells.set(ordinal, minor);
+                setBit(held, ordinal);
+            } else {
+                others.put(currency, new AtomicLongArray(new long[]{minor}));
+            }
+        });
     }
 
     public double getBalance(String currency) {
-        return balances.getOrDefault(currency, 0.0);
+        return Money.toDouble(getMinor(currency), currencies.scale(currency));
+    }
+
+    public double getBalance(Currency currency) {
+        return Money.toDouble(getMinor(currency), currency.getScale());
+    }
+
+    /**
+     * @return The balance in minor units of the currency
+     */
+    public long getMinor(String currency) {
+        return getMinor(currency, ordinal(currency));
+    }
+
+    public long getMinor(Currency currency) {
+        return getMinor(currency.getId(), ordinal(currency));
     }
 
     public void setBalance(String currency, double amount) {
-        balances.put(currency, Math.max(0, amount));
+        setMinor(currency, Money.of(amount, currencies.scale(currency)));
+    }
+
+    public void setMinor(String currency, long amount) {
+        long minor = Math.max(0, amount);
+        int ordinal = ordinal(currency);
+        boolean added;
+        long previous;
+        if (ordinal >= 0) {
+            added = setBit(held, ordinal);
+            previous = cells.getAndSet(ordinal, minor);
+        } else {
+            AtomicLongArray other = others.get(currency);
+            if (other == null) {
+                other = others.putIfAbsent(currency, new AtomicLongArray(new long[]{minor}));
+            }
+            added = other == null;
+            previous = added ? minor : other.getAndSet(0, minor);
+        }
+
+        if (added || previous != minor) {
+            markChanged(currency, ordinal);
+        }
     }
 
     public void addBalance(String currency, double amount) {
-        setBalance(currency, getBalance(currency) + amount);
+        credit(currency, Money.of(amount, currencies.scale(currency)));
     }
 
     public boolean removeBalance(String currency, double amount) {
-        double currentBalance = getBalance(currency);
-        if (currentBalance >= amount) {
-            setBalance(currency, currentBalance - amount);
-            return true;
-        }
-        return false;
+        return debit(currency, Money.of(amount, currencies.scale(currency)));
+    }
+
+    /**
+     * Adds minor units to a balance, which never drops below zero when {@code amount} is negative.
+     */
+    public void credit(String currency, long amount) {
+        credit(currency, ordinal(currency), amount);
+    }
+
+    public void credit(Currency currency, long amount) {
+        credit(currency.getId(), ordinal(currency), amount);
+    }
+
+    /**
+     * Removes minor units from a balance only if it holds at least {@code amount}.
+     *
+     * @return false if the balance was insufficient
+     */
+    public boolean debit(String currency, long amount) {
+        return debit(currency, ordinal(currency), amount);
     }
 
+    public boolean debit(Currency currency, long amount) {
+        return debit(currency.getId(), ordinal(currency), amount);
+    }
+
+    /**
+     * @return The held balances as doubles, for API consumers
+     */
     public Map<String, Double> getBalances() {
-        return new HashMap<>(balances);
+        Map<String, Double> copy = new HashMap<>((cells.length() + others.size()) * 2);
+        forEachMinor((currency, minor) -> copy.put(currency, Money.toDouble(minor, currencies.scale(currency))));
+        return copy;
+    }
+
+    /**
+     * @return The held balances in minor units
+     */
+    public Map<String, Long> getMinorBalances() {
+        Map<String, Long> copy = new HashMap<>((cells.length() + others.size()) * 2);
+        forEachMinor(copy::put);
+        return copy;
+    }
+
+    /**
+     * Iterates the held balances in minor units without copying them. The action
+     * must not modify this profile.
+     */
+    public void forEachMinor(ObjLongConsumer<String> action) {
+        List<Currency> ordered = currencies.getOrdered();
+        for (int ordinal = 0; ordinal < cells.length(); ordinal++) {
+            if (hasBit(held, ordinal)) {
+                action.accept(ordered.get(ordinal).getId(), cells.get(ordinal));
+            }
+        }
+        others.forEach((currency, cell) -> action.accept(currency, cell.get(0)));
     }
 
     public boolean hasBalance(String currencyCode, double amount) {
         if (amount < 0) return false;
-        return getBalance(currencyCode) >= amount;
+        return getMinor(currencyCode) >= Money.of(amount, currencies.scale(currencyCode));
+    }
+
+    /**
+     * @return The changed currencies with their current balance in minor units
+     */
+    public Map<String, Long> getChanges() {
+        Map<String, Long> changes = new HashMap<>();
+        List<Currency> ordered = currencies.getOrdered();
+        for (int ordinal = 0; ordinal < cells.length(); ordinal++) {
+            if (hasBit(changed, ordinal)) {
+                changes.put(ordered.get(ordinal).getId(), cells.get(ordinal));
+            }
+        }
+        othersChanged.forEach(currency -> changes.put(currency, getMinor(currency)));
+        return changes;
+    }
+
+    public boolean hasChanges() {
+        for (int word = 0; word < changed.length(); word++) {
+            if (changed.get(word) != 0) {
+                return true;
+            }
+        }
+        return !othersChanged.isEmpty();
+    }
+
+    /**
+     * Clears the changes that were written. A currency changed again after the
+     * written values were taken stays marked.
+     *
+     * @param persisted The balances that were written, in minor units
+     */
+    public void markPersisted(Map<String, Long> persisted) {
+        persisted.forEach((currency, amount) -> {
+            int ordinal = ordinal(currency);
+            // Unmarked before the check: a concurrent change either is seen by it or marks the currency again
+            if (ordinal >= 0) {
+                clearBit(changed, ordinal);
+            } else {
+                othersChanged.remove(currency);
+            }
+            if (getMinor(currency, ordinal) != Math.max(0, amount)) {
+                markChanged(currency, ordinal);
+            }
+        });
+    }
+
+    private long getMinor(String currency, int ordinal) {
+        if (ordinal >= 0) {
+            return cells.get(ordinal);
+        }
+        AtomicLongArray other = others.get(currency);
+        return other != null ? other.get(0) : 0;
+    }
+
+    private void credit(String currency, int ordinal, long amount) {
+        AtomicLongArray array;
+        int index;
+        if (ordinal >= 0) {
+            array = cells;
+            index = ordinal;
+            setBit(held, ordinal);
+        } else {
+            array = other(currency);
+            index = 0;
+        }
+
+        long current;
+        long next;
+        do {
+            current = array.get(index);
+            next = Math.max(0, current + amount);
+        } while (current != next && !array.compareAndSet(index, current, next));
+
+        if (current != next) {
+            markChanged(currency, ordinal);
+        }
+    }
+
+    private boolean debit(String currency, int ordinal, long amount) {
+        AtomicLongArray array;
+        int index;
+        if (ordinal >= 0) {
+            array = cells;
+            index = ordinal;
+        } else {
+            array = amount > 0 ? others.get(currency) : other(currency);
+            if (array == null) {
+                return false;
+            }
+            index = 0;
+        }
+
+        long current;
+        do {
+            current = array.get(index);
+            if (current < amount) {
+                return false;
+            }
+        } while (!array.compareAndSet(index, current, current - amount));
+
+        if (ordinal >= 0) {
+            setBit(held, ordinal);
+        }
+        if (amount != 0) {
+            markChanged(currency, ordinal);
+        }
+        return true;
+    }
+
+    /**
+     * @return The ordinal if the currency has a cell in this profile, else -1
+     */
+    private int ordinal(String currency) {
+        int ordinal = currencies.ordinal(currency);
+        return ordinal < cells.length() ? ordinal : -1;
+    }
+
+    private int ordinal(Currency currency) {
+        int ordinal = currency.getOrdinal();
+        return ordinal < cells.length() ? ordinal : -1;
+    }
+
+    private AtomicLongArray other(String currency) {
+        AtomicLongArray other = others.get(currency);
+        return other != null ? other : others.computeIfAbsent(currency, key -> new AtomicLongArray(1));
+    }
+
+    private void markChanged(String currency, int ordinal) {
+        if (ordinal >= 0) {
+            setBit(changed, ordinal);
+        } else {
+            othersChanged.add(currency);
+        }
+    }
+
+    /**
+     * @return true if the bit was not set before
+     */
+    private static boolean setBit(AtomicLongArray bits, int index) {
+        int word = index >>> 6;
+        long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+        return true;
+    }
+
+    private static void clearBit(AtomicLongArray bits, int index) {
+        int word = index >>> 6;
+        long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+        } while ((current & mask) != 0 && !bits.compareAndSet(word, current, current & ~mask));
+    }
+
+    private static boolean hasBit(AtomicLongArray bits, int index) {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
     }
-}
\ No newline at end of file
+}
@@ -4,11 +4,16 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.monxef.gbank.enums.TransactionType;
 
+import java.math.BigDecimal;
+
 @Getter
 @RequiredArgsConstructor
 public class Transaction {
     private final TransactionType type;
-    private final double amount;
+    // In minor units of the currency, see Money
+    private final long amount;
+    // Decimals of the currency when the transaction was recorded
+    private final int scale;
     private final long timestamp;
     private final String details;
 
@@ -16,11 +21,26 @@ public class Transaction {
      * Creates a new transaction with the current timestamp
      *
      * @param type The type of transaction
-     * @param amount The amount involved in the transaction
+     * @param amount The amount involved in the transaction, in minor units
+     * @param scale The decimals of the transaction's currency
      * @param details Additional details about the transaction
      */
-    public Transaction(TransactionType type, double amount, String details) {
-        this(type, amount, System.currentTimeMillis(), details);
+    public Transaction(TransactionType type, long amount, int scale, String details) {
+        this(type, amount, scale, System.currentTimeMillis(), details);
+    }
+
+    /**
+     * Creates a new transaction with the current timestamp, in the given currency
+     */
+    public Transaction(TransactionType type, long amount, Currency currency, String details) {
+        this(type, amount, currency.getScale(), details);
+    }
+
+    /**
+     * @return The exact amount as a decimal, for storage formats holding decimals
+     */
+    public BigDecimal toDecimal() {
+        return Money.toDecimal(amount, scale);
     }
 
     /**
@@ -30,8 +50,11 @@ public class Transaction {
      * @return Formatted amount with currency prefix
      */
     public String getFormattedAmount(String currencyPrefix) {
-        String sign = amount >= 0 ? "+" : "";
-        return String.format("%s%s%.2f", currencyPrefix, sign, amount);
+        StringBuilder out = new StringBuilder(currencyPrefix);
+        if (amount >= 0) {
+            out.append('+');
+        }
+        return Money.append(out, amount, scale).toString();
     }
 
     /**
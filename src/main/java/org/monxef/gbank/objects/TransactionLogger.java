@@ -2,45 +2,51 @@ package org.monxef.gbank.objects;
 
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.storage.StorageHandler;
-import org.monxef.gbank.storage.impl.JsonStorageHandler;
-import org.monxef.gbank.storage.impl.MongoDBStorageHandler;
-import org.monxef.gbank.storage.impl.MySQLStorageHandler;
+import org.monxef.gbank.storage.StorageHandlerFactory;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 public class TransactionLogger {
     private final GBank plugin;
     private final StorageHandler storage;
+    private final boolean ownsStorage;
 
     public TransactionLogger(GBank plugin) {
         this.plugin = plugin;
         this.storage = initializeStorage();
+        this.ownsStorage = storage != plugin.getStorageHandler();
     }
 
+    /**
+     * Reuses the main storage handler unless {@code transaction_history.storage}
+     * points to a different backend.
+     */
     private StorageHandler initializeStorage() {
         String storageType = plugin.getConfig().getString("transaction_history.storage", "SAME");
         String mainStorageType = plugin.getConfig().getString("storage.type", "json");
 
-        return switch (mainStorageType.toLowerCase()) {
-            case "mysql" -> {
-                String host = plugin.getConfig().getString("storage.mysql.host", "localhost");
-                int port = plugin.getConfig().getInt("storage.mysql.port", 3306);
-                String database = plugin.getConfig().getString("storage.mysql.database", "gbank");
-                String username = plugin.getConfig().getString("storage.mysql.username", "root");
-                String password = plugin.getConfig().getString("storage.mysql.password", "password");
-                boolean ssl = plugin.getConfig().getBoolean("storage.mysql.ssl",false);
-                yield new MySQLStorageHandler(host, port, database, username, password,ssl);
-            }
-            case "mongodb" -> {
-                String uri = plugin.getConfig().getString("storage.mongodb.uri", "mongodb://localhost:27017");
-                String database = plugin.getConfig().getString("storage.mongodb.database", "gbank");
-                yield new MongoDBStorageHandler(uri + "/" + database);
-            }
-            case "json" -> new JsonStorageHandler(plugin);
-            default -> plugin.getStorageHandler(); // Fallback to main storage
-        };
+        if (storageType.equalsIgnoreCase("SAME") || storageType.equalsIgnoreCase(mainStorageType)) {
+            return plugin.getStorageHandler();
+        }
+
+        try {
+            StorageHandler handler = StorageHandlerFactory.create(plugin, storageType);
+            handler.start();
+            return handler;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to initialize transaction storage, using main storage", e);
+            return plugin.getStorageHandler();
+        }
     }
+
     public CompletableFuture<Void> logTransaction(UUID playerId, String currency, Transaction transaction) {
         return storage.saveTransaction(playerId, currency, transaction)
                 .exceptionally(throwable -> {
@@ -58,4 +64,28 @@ public class TransactionLogger {
                     return Collections.emptyList();
                 });
     }
+
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        return storage.getTransactions(query)
+                .exceptionally(throwable -> {
+                    plugin.getLogger().severe("Failed to get transactions: " + throwable.getMessage());
+                    throwable.printStackTrace();
+                    return new TransactionPage(Collections.emptyList(), null);
+                });
+    }
+
+    /**
+     * Runs one retention step on the storage holding the transaction history.
+     *
+     * @see StorageHandler#trimTransactions(RetentionPolicy, HistoryKey, int)
+     */
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return storage.trimTransactions(policy, after, accounts);
+    }
+
+    public void close(Duration timeout) {
+        if (ownsStorage && !storage.close(timeout)) {
+            plugin.getLogger().warning("Transaction storage did not finish pending writes in time");
+        }
+    }
 }
\ No newline at end of file
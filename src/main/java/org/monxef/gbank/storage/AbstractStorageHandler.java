@@ -0,0 +1,234 @@
+package org.monxef.gbank.storage;
+
+import org.monxef.gbank.objects.PlayerProfile;
+import org.monxef.gbank.storage.batch.BatchWriter;
+import org.monxef.gbank.storage.cache.KnownAccounts;
+import org.monxef.gbank.storage.cache.SingleFlight;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Base class for storage handlers that keeps track of every asynchronous
+ * operation it starts, so {@link #close(Duration)} can wait for them instead of
+ * dropping them when the server stops.
+ * <p>
+ * Operations run on the backend's own {@link StorageExecutor}, and callbacks
+ * added with the {@code *Async} methods of the returned futures stay on it.
+ */
+public abstract class AbstractStorageHandler implements StorageHandler {
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final StorageExecutor executor;
+    private final SingleFlight<UUID, Optional<PlayerProfile>> profileLoads = new SingleFlight<>();
+    private final AccountLocks locks = new AccountLocks(AccountLocks.DEFAULT_STRIPES);
+    private volatile boolean closing;
+
+    protected AbstractStorageHandler(StorageExecutor executor) {
+        this.executor = executor;
+    }
+
+    protected <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        CompletableFuture<T> future = new StorageFuture<>(executor);
+        if (!track(future)) {
+            return future;
+        }
+
+        executor.execute(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Creates a tracked future for an operation completed by a driver callback
+     * instead of a task on the executor. The future is already failed when the
+     * handler is closing.
+     */
+    protected <T> CompletableFuture<T> newFuture() {
+        CompletableFuture<T> future = new StorageFuture<>(executor);
+        track(future);
+        return future;
+    }
+
+    /**
+     * Queues an item on a batch writer, tracking it until its batch is written.
+     */
+    protected <T> CompletableFuture<Void> enqueue(BatchWriter<T> writer, T item) {
+        CompletableFuture<Void> future = newFuture();
+        if (future.isDone()) {
+            return future;
+        }
+
+        writer.submit(item).whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Starts a profile load unless one for the same player is already running, in
+     * which case its result, and so the same profile instance, is shared.
+     */
+    protected CompletableFuture<Optional<PlayerProfile>> loadOnce(UUID playerId,
+                                                                 Supplier<CompletableFuture<Optional<PlayerProfile>>> load) {
+        return profileLoads.run(playerId, load);
+    }
+
+    /**
+     * Once the write completes, loads already running for these players are no
+     * longer shared, so callers arriving after the write read its result. The
+     * returned future completes after that.
+     */
+    protected <T> CompletableFuture<T> written(CompletableFuture<T> write, UUID... playerIds) {
+        return write.whenComplete((result, error) -> {
+            for (UUID playerId : playerIds) {
+                profileLoads.forget(playerId);
+            }
+        });
+    }
+
+    /**
+     * Locks an account for a read-modify-write of its balances. The lock belongs to
+     * the calling thread, so it cannot be held across asynchronous callbacks.
+     */
+    protected AccountLocks.Held lockAccount(UUID playerId) {
+        return locks.lock(playerId);
+    }
+
+    /**
+     * Locks both accounts of a transfer in a fixed order, see {@link AccountLocks}.
+     */
+    protected AccountLocks.Held lockAccounts(UUID first, UUID second) {
+        return locks.lock(first, second);
+    }
+
+    /**
+     * Rebuilds the known-account filter in the background when it is due.
+     */
+    protected void refreshAccounts(KnownAccounts accounts, KnownAccounts.AccountScanner scanner) {
+        if (!accounts.claimRebuild()) {
+            return;
+        }
+
+        runAsync(() -> {
+            try {
+                accounts.rebuild(scanner);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    protected CompletableFuture<Void> runAsync(Runnable task) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Registers an operation so shutdown waits for it. Fails the future instead
+     * when the handler is already closing.
+     *
+     * @return false if the operation was rejected
+     */
+    protected boolean track(CompletableFuture<?> future) {
+        inFlight.add(future);
+        if (closing) {
+            inFlight.remove(future);
+            future.completeExceptionally(new IllegalStateException("Storage is shutting down"));
+            return false;
+        }
+
+        future.whenComplete((result, error) -> inFlight.remove(future));
+        return true;
+    }
+
+    protected StorageExecutor getExecutor() {
+        return executor;
+    }
+
+    protected boolean isClosing() {
+        return closing;
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("in-flight", inFlight.size());
+        statistics.put("executor", executor.stats());
+        statistics.put("profile-loads", profileLoads.stats());
+        statistics.put("account-locks", locks.stats());
+        return statistics;
+    }
+
+    @Override
+    public boolean close(Duration timeout) {
+        closing = true;
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        boolean drained = await(CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])), deadline);
+        drained &= await(flush(), deadline);
+
+        shutdown();
+        executor.shutdown();
+        return drained;
+    }
+
+    /**
+     * Releases connections, files and threads once pending work is drained.
+     */
+    protected abstract void shutdown();
+
+    private boolean await(CompletableFuture<?> future, long deadline) {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // The operation itself failed, it is no longer pending
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class StorageFuture<T> extends CompletableFuture<T> {
+        private final Executor executor;
+
+        private StorageFuture(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public Executor defaultExecutor() {
+            return executor;
+        }
+
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new StorageFuture<>(executor);
+        }
+    }
+}
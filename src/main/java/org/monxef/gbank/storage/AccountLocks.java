@@ -0,0 +1,92 @@
+package org.monxef.gbank.storage;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks serializing balance mutations per account. Players hashing to
+ * different stripes never wait on each other, so unrelated payments run in
+ * parallel while two operations on the same account are applied one at a time.
+ * <p>
+ * Operations on two accounts take both stripes in ascending stripe order, so two
+ * transfers crossing the same pair of accounts, in either direction, cannot
+ * deadlock. Ordering by stripe rather than by UUID matters: two unrelated pairs
+ * can share stripes in opposite UUID order.
+ */
+public class AccountLocks {
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] stripes;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+
+    public AccountLocks(int stripes) {
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks a single account until the returned handle is closed.
+     */
+    public Held lock(UUID playerId) {
+        ReentrantLock lock = stripes[stripe(playerId)];
+        acquire(lock);
+        return lock::unlock;
+    }
+
+    /**
+     * Locks both accounts of a transfer until the returned handle is closed.
+     */
+    public Held lock(UUID first, UUID second) {
+        int a = stripe(first);
+        int b = stripe(second);
+        if (a == b) {
+            return lock(first);
+        }
+
+        ReentrantLock low = stripes[Math.min(a, b)];
+        ReentrantLock high = stripes[Math.max(a, b)];
+        acquire(low);
+        acquire(high);
+        return () -> {
+            high.unlock();
+            low.unlock();
+        };
+    }
+
+    public LockStats stats() {
+        return new LockStats(stripes.length, acquired.sum(), contended.sum());
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquired.increment();
+        if (!lock.tryLock()) {
+            contended.increment();
+            lock.lock();
+        }
+    }
+
+    private int stripe(UUID playerId) {
+        return (playerId.hashCode() & 0x7fffffff) % stripes.length;
+    }
+
+    /**
+     * Locks held by one operation, released by closing it.
+     */
+    @FunctionalInterface
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public record LockStats(int stripes, long acquired, long contended) {
+
+        @Override
+        public String toString() {
+            return String.format("stripes=%d acquired=%d contended=%d", stripes, acquired, contended);
+        }
+    }
+}
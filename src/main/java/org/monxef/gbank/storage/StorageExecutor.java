@@ -0,0 +1,104 @@
+package org.monxef.gbank.storage;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor owned by a single storage backend, so blocking JDBC, Mongo or file
+ * I/O never runs on the common pool shared with the rest of the server.
+ * Keeps track of how many tasks are waiting and for how long.
+ */
+public class StorageExecutor implements Executor {
+    private final String type;
+    private final ExecutorService delegate;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalWait = new LongAdder();
+    private final AtomicLong maxWait = new AtomicLong();
+
+    private StorageExecutor(String type, ExecutorService delegate) {
+        this.type = type;
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param name Backend name used for the thread names
+     * @param type virtual for one virtual thread per task, fixed for a bounded platform pool
+     * @param threads Pool size when the type is fixed
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public static StorageExecutor create(String name, String type, int threads) {
+        return switch (type.toLowerCase()) {
+            case "virtual" -> new StorageExecutor("virtual", Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("GBank-" + name + "-", 1).factory()));
+            case "fixed" -> new StorageExecutor("fixed", Executors.newFixedThreadPool(
+                    Math.max(1, threads), platformThreads(name)));
+            default -> throw new IllegalArgumentException("Unknown storage executor type: " + type);
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long submitted = System.nanoTime();
+        queued.incrementAndGet();
+
+        delegate.execute(() -> {
+            long wait = System.nanoTime() - submitted;
+            queued.decrementAndGet();
+            totalWait.add(wait);
+            maxWait.accumulateAndGet(wait, Math::max);
+
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+            }
+        });
+    }
+
+    /**
+     * Stops the threads once the handler has drained its pending operations.
+     */
+    public void shutdown() {
+        delegate.shutdown();
+        try {
+            delegate.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public ExecutorStats stats() {
+        long done = completed.sum();
+        return new ExecutorStats(type, queued.get(), active.get(), done,
+                done == 0 ? 0 : totalWait.sum() / done, maxWait.get());
+    }
+
+    private static ThreadFactory platformThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "GBank-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public record ExecutorStats(String type, int queued, int active, long completed, long averageWaitNanos, long maxWaitNanos) {
+
+        @Override
+        public String toString() {
+            return String.format("type=%s queued=%d active=%d completed=%d avg-wait=%.2fms max-wait=%.2fms",
+                    type, queued, active, completed, averageWaitNanos / 1e6, maxWaitNanos / 1e6);
+        }
+    }
+}
@@ -2,8 +2,15 @@ package org.monxef.gbank.storage;
 
 import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -13,4 +20,96 @@ public interface StorageHandler {
     CompletableFuture<Void> saveProfile(PlayerProfile profile);
     CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction);
     CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit);
-}
\ No newline at end of file
+
+    /**
+     * Reads one page of a transaction history, newest first.
+     *
+     * @param query The player, currency, filters and the cursor of the previous page
+     * @return CompletableFuture containing the page and the cursor of the next one
+     */
+    CompletableFuture<TransactionPage> getTransactions(TransactionQuery query);
+
+    /**
+     * Removes the transactions of a few histories that fall outside the policy.
+     * A full pass over every history is made of successive calls, each continuing
+     * after the history the previous one stopped at.
+     *
+     * @param policy How much history to keep
+     * @param after Last history of the previous call, or null to start a new pass
+     * @param accounts Maximum number of histories handled by this call
+     * @return CompletableFuture containing the number removed and where to continue
+     */
+    CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts);
+
+    /**
+     * Adds to a balance in place, without loading and saving the whole profile.
+     *
+     * @param playerId The player to credit
+     * @param currency The currency code
+     * @param amount The amount to add, in minor units of the currency
+     * @return CompletableFuture completed once the balance is updated
+     */
+    CompletableFuture<Void> credit(UUID playerId, String currency, long amount);
+
+    /**
+     * Removes from a balance only if it holds at least {@code amount}.
+     *
+     * @param playerId The player to debit
+     * @param currency The currency code
+     * @param amount The amount to remove, in minor units of the currency
+     * @return CompletableFuture containing false if the balance was insufficient
+     */
+    CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount);
+
+    /**
+     * Replaces a balance in place, without loading and saving the whole profile.
+     *
+     * @param playerId The player whose balance is set
+     * @param currency The currency code
+     * @param amount The new balance, in minor units of the currency
+     * @return CompletableFuture completed once the balance is updated
+     */
+    CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount);
+
+    /**
+     * Moves money between two players as a single operation. Nothing changes if
+     * the source cannot cover {@code debit}.
+     *
+     * @param from The player paying
+     * @param to The player receiving
+     * @param currency The currency code
+     * @param debit The amount taken from {@code from}, in minor units of the currency
+     * @param credit The amount given to {@code to}, lower than debit when taxed
+     * @return CompletableFuture containing false if the source balance was insufficient
+     */
+    CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit);
+
+    /**
+     * @return Cache, queue and other runtime figures shown by {@code /bank stats}
+     */
+    default Map<String, Object> getStatistics() {
+        return Map.of();
+    }
+
+    /**
+     * Starts background work (flush timers, connections...) once the plugin is enabled.
+     */
+    default void start() {
+    }
+
+    /**
+     * Persists anything the handler is still holding in memory.
+     *
+     * @return CompletableFuture completed once the pending data is written
+     */
+    CompletableFuture<Void> flush();
+
+    /**
+     * Stops accepting new operations, waits for the ones in flight, flushes and
+     * releases the underlying resources.
+     *
+     * @param timeout How long to wait for pending operations
+     * @return true if everything was drained before the timeout
+     */
+    boolean close(Duration timeout);
+}
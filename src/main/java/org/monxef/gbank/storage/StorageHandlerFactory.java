@@ -0,0 +1,121 @@
+package org.monxef.gbank.storage;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.monxef.gbank.GBank;
+import org.monxef.gbank.storage.batch.BatchWriter;
+import org.monxef.gbank.storage.cache.CachingStorageHandler;
+import org.monxef.gbank.storage.cache.KnownAccounts;
+import org.monxef.gbank.storage.impl.JsonStorageHandler;
+import org.monxef.gbank.storage.impl.MappedStorageHandler;
+import org.monxef.gbank.storage.impl.MongoDBStorageHandler;
+import org.monxef.gbank.storage.impl.MySQLStorageHandler;
+import org.monxef.gbank.storage.impl.ReactiveMongoDBStorageHandler;
+import org.monxef.gbank.storage.ledger.LedgerEngine;
+
+import java.time.Duration;
+
+public class StorageHandlerFactory {
+
+    /**
+     * Creates the storage handler for the given type from the {@code storage} section of the config.
+     *
+     * @param plugin The plugin instance
+     * @param type The storage type (json, mapped, mysql, mongodb)
+     * @return The storage handler behind the ledger, not started yet
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public static StorageHandler create(GBank plugin, String type) {
+        FileConfiguration config = plugin.getConfig();
+
+        return ledger(config, switch (type.toUpperCase()) {
+            case "JSON" -> new JsonStorageHandler(plugin, executor(config, "json", "fixed"));
+            case "MAPPED" -> new MappedStorageHandler(plugin, executor(config, "mapped", "fixed"));
+            case "MONGODB" -> cached(config, config.getString("storage.mongodb.driver", "sync").equalsIgnoreCase("reactive")
+                    ? new ReactiveMongoDBStorageHandler(
+                            executor(config, "mongodb", "virtual"),
+                            config.getString("storage.mongodb.uri", "mongodb://localhost:27017"))
+                    : new MongoDBStorageHandler(
+                            executor(config, "mongodb", "virtual"),
+                            config.getString("storage.mongodb.uri", "mongodb://localhost:27017"),
+                            batchSettings(config, "storage.mongodb.batch"),
+                            knownAccounts(config)));
+            case "MYSQL" -> cached(config, new MySQLStorageHandler(
+                    executor(config, "mysql", "virtual"),
+                    config.getString("storage.mysql.host", "localhost"),
+                    config.getInt("storage.mysql.port", 3306),
+                    config.getString("storage.mysql.database", "gbank"),
+                    config.getString("storage.mysql.username", "root"),
+                    config.getString("storage.mysql.password", "password"),
+                    config.getBoolean("storage.mysql.ssl", false),
+                    batchSettings(config, "storage.mysql.transaction-batch"),
+                    knownAccounts(config),
+                    config.getBoolean("storage.mysql.migrate-amount-columns", false),
+                    plugin.getLogger()));
+            default -> throw new IllegalArgumentException("Unknown storage type: " + type);
+        });
+    }
+
+    /**
+     * Puts the ledger configured in {@code storage.ledger} in front of the
+     * backend, so the balance mutations of each account are applied in order.
+     */
+    private static StorageHandler ledger(FileConfiguration config, StorageHandler handler) {
+        if (!config.getBoolean("storage.ledger.enabled", true)) {
+            return handler;
+        }
+        return new LedgerEngine(handler, new LedgerEngine.Settings(
+                config.getInt("storage.ledger.shards", 8),
+                config.getInt("storage.ledger.queue-size", 10000),
+                config.getLong("storage.ledger.queue-timeout-ms", 100)));
+    }
+
+    /**
+     * Builds the executor of a backend from {@code storage.executor}. The default
+     * type uses virtual threads for network databases and a small platform pool
+     * for file storage.
+     */
+    private static StorageExecutor executor(FileConfiguration config, String name, String defaultType) {
+        String type = config.getString("storage.executor.type", "default");
+        if (type.equalsIgnoreCase("default")) {
+            type = defaultType;
+        }
+        return StorageExecutor.create(name, type, config.getInt("storage.executor.threads", 4));
+    }
+
+    /**
+     * Puts the profile cache configured in {@code storage.cache} in front of a
+     * network backend, unless it is disabled.
+     */
+    private static StorageHandler cached(FileConfiguration config, StorageHandler handler) {
+        if (!config.getBoolean("storage.cache.enabled", true)) {
+            return handler;
+        }
+        return new CachingStorageHandler(handler,
+                config.getInt("storage.cache.max-profiles", 10000),
+                Duration.ofSeconds(config.getLong("storage.cache.ttl-seconds", 30)));
+    }
+
+    /**
+     * Builds the known-account filter configured in {@code storage.account-filter}.
+     * Off unless enabled, it is only correct when no other server writes to the database.
+     */
+    private static KnownAccounts knownAccounts(FileConfiguration config) {
+        if (!config.getBoolean("storage.account-filter.enabled", false)) {
+            return KnownAccounts.disabled();
+        }
+        return new KnownAccounts(
+                config.getLong("storage.account-filter.expected-accounts", 100000),
+                config.getDouble("storage.account-filter.false-positive-rate", 0.01),
+                Duration.ofMinutes(config.getLong("storage.account-filter.refresh-minutes", 10)),
+                Duration.ofSeconds(config.getLong("storage.account-filter.negative-ttl-seconds", 60)),
+                config.getInt("storage.account-filter.max-negatives", 10000));
+    }
+
+    private static BatchWriter.Settings batchSettings(FileConfiguration config, String path) {
+        return new BatchWriter.Settings(
+                config.getInt(path + ".queue-size", 10000),
+                config.getInt(path + ".max-size", 200),
+                config.getLong(path + ".linger-ms", 50),
+                config.getLong(path + ".queue-timeout-ms", 100));
+    }
+}
@@ -0,0 +1,205 @@
+package org.monxef.gbank.storage.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects items in a bounded queue and writes them in batches from a single
+ * background thread. A batch is written once it is full or once its oldest item
+ * has waited for the linger time. Each item's future completes after the batch
+ * holding it was written.
+ *
+ * @param <T> The item type
+ */
+public class BatchWriter<T> {
+    private final String name;
+    private final BatchSink<T> sink;
+    private final BlockingQueue<Pending<T>> queue;
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long offerTimeoutNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name Used for the thread name
+     * @param sink Writes one batch, all or nothing
+     * @param settings Queue and batch limits
+     */
+    public BatchWriter(String name, BatchSink<T> sink, Settings settings) {
+        this.name = name;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.capacity()));
+        this.maxBatchSize = Math.max(1, settings.maxBatchSize());
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.lingerMillis());
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.offerTimeoutMillis());
+
+        this.thread = new Thread(this::run, "GBank-" + name + "-batch");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an item, blocking for up to the offer timeout while the queue is full.
+     *
+     * @return CompletableFuture completed once the item was written, or failed with a
+     * {@link RejectedExecutionException} if the queue stayed full
+     */
+    public CompletableFuture<Void> submit(T item) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new RejectedExecutionException(name + " batch writer is closed"));
+            return future;
+        }
+
+        pending.add(future);
+        future.whenComplete((result, error) -> pending.remove(future));
+        try {
+            if (!queue.offer(new Pending<>(item, future), offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                future.completeExceptionally(new RejectedExecutionException(name + " batch queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return CompletableFuture completed once every item submitted so far was written
+     */
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Writes what is left in the queue and stops the background thread.
+     */
+    public void close(long timeoutMillis) {
+        running = false;
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Whatever the thread could not write in time is failed instead of left hanging
+        List<Pending<T>> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        leftover.forEach(item -> item.future.completeExceptionally(
+                new RejectedExecutionException(name + " batch writer is closed")));
+    }
+
+    public BatchStats stats() {
+        return new BatchStats(queue.size(), written.sum(), batches.sum(), rejected.sum());
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+
+                    Pending<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                write(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Pending<T>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<T> items = new ArrayList<>(batch.size());
+        batch.forEach(item -> items.add(item.item));
+
+        try {
+            sink.write(items);
+            written.add(items.size());
+            batches.increment();
+            batch.forEach(item -> item.future.complete(null));
+        } catch (PartialBatchException e) {
+            written.add(items.size() - e.getFailures().size());
+            batches.increment();
+            for (int i = 0; i < batch.size(); i++) {
+                Exception failure = e.getFailures().get(i);
+                if (failure != null) {
+                    batch.get(i).future.completeExceptionally(failure);
+                } else {
+                    batch.get(i).future.complete(null);
+                }
+            }
+        } catch (Exception e) {
+            batch.forEach(item -> item.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Writes a batch of items. Throws a {@link PartialBatchException} when only some
+     * of them failed, or any other exception when none of them were written.
+     */
+    @FunctionalInterface
+    public interface BatchSink<T> {
+        void write(List<T> items) throws Exception;
+    }
+
+    /**
+     * @param capacity Maximum number of queued items
+     * @param maxBatchSize Maximum number of items written at once
+     * @param lingerMillis How long the first item of a batch waits for more to arrive
+     * @param offerTimeoutMillis How long {@link #submit(Object)} blocks while the queue is full
+     */
+    public record Settings(int capacity, int maxBatchSize, long lingerMillis, long offerTimeoutMillis) {
+    }
+
+    private record Pending<T>(T item, CompletableFuture<Void> future) {
+    }
+
+    public record BatchStats(int queued, long written, long batches, long rejected) {
+
+        @Override
+        public String toString() {
+            return String.format("queued=%d written=%d batches=%d avg-batch=%.1f rejected=%d",
+                    queued, written, batches, batches == 0 ? 0.0 : (double) written / batches, rejected);
+        }
+    }
+}
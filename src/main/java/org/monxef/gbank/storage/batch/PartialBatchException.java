@@ -0,0 +1,22 @@
+package org.monxef.gbank.storage.batch;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Thrown by a batch sink when some items of a batch were written and others
+ * were not, so each caller gets the outcome of its own item.
+ */
+@Getter
+public class PartialBatchException extends Exception {
+    /**
+     * Failures keyed by the index of the item in the batch
+     */
+    private final Map<Integer, Exception> failures;
+
+    public PartialBatchException(Map<Integer, Exception> failures) {
+        super(failures.size() + " items of the batch failed");
+        this.failures = failures;
+    }
+}
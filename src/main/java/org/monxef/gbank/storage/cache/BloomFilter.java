@@ -0,0 +1,85 @@
+package org.monxef.gbank.storage.cache;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of player ids. {@link #mightContain(UUID)} never answers false for
+ * an id that was added, and answers true for an id that was not with roughly the
+ * false positive rate the filter was sized for. Safe for concurrent use.
+ */
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashes;
+
+    private BloomFilter(long bitSize, int hashes) {
+        this.words = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+        this.bitSize = (long) words.length() << 6;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param expectedInsertions Number of ids the filter should hold
+     * @param falsePositiveRate Wanted false positive rate at that size, e.g. 0.01
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long bits = Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+        bits = Math.min(bits, (long) Integer.MAX_VALUE << 6);
+        int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        return new BloomFilter(bits, hashes);
+    }
+
+    /**
+     * @return true if the filter changed, i.e. the id was not already (seemingly) present
+     */
+    public boolean add(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), 32));
+        long h2 = mix(id.getLeastSignificantBits()) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+                changed = true;
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+        return changed;
+    }
+
+    public boolean mightContain(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), 32));
+        long h2 = mix(id.getLeastSignificantBits()) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    // Finalizer of SplitMix64, spreads every input bit over the whole output
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,148 @@
+package org.monxef.gbank.storage.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Weight-bounded LRU cache. Entries are weighed when they are put, and the least
+ * recently used ones are evicted once the total weight goes over the limit.
+ * Pinned keys are skipped by the eviction, so the cache may stay over its limit
+ * while everything left in it is pinned.
+ */
+public class BoundedCache<K, V> {
+    private final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    private final Predicate<K> pinned;
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedCache(long maxWeight, ToIntFunction<V> weigher, Predicate<K> pinned) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.pinned = pinned;
+    }
+
+    /**
+     * Looks up a value and counts the hit or miss.
+     */
+    public synchronized V get(K key) {
+        Node<V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Looks up a value without counting a hit or miss.
+     */
+    public synchronized V peek(K key) {
+        Node<V> node = map.get(key);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Inserts or replaces a value. Putting the same value again re-weighs it after
+     * it was mutated in place.
+     */
+    public synchronized void put(K key, V value) {
+        int valueWeight = weigher.applyAsInt(value);
+        Node<V> old = map.put(key, new Node<>(value, valueWeight));
+        weight += valueWeight - (old != null ? old.weight : 0);
+        evict();
+    }
+
+    /**
+     * Inserts the value unless the key is already cached.
+     *
+     * @return The cached value
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        V current = peek(key);
+        if (current != null) {
+            return current;
+        }
+        put(key, value);
+        return value;
+    }
+
+    public synchronized V remove(K key) {
+        Node<V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        weight -= node.weight;
+        return node.value;
+    }
+
+    public synchronized List<V> values() {
+        List<V> values = new ArrayList<>(map.size());
+        map.values().forEach(node -> values.add(node.value));
+        return values;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(map.size(), weight, maxWeight, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private void evict() {
+        if (weight <= maxWeight) {
+            return;
+        }
+
+        List<K> skipped = new ArrayList<>();
+        Iterator<Map.Entry<K, Node<V>>> iterator = map.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<K, Node<V>> entry = iterator.next();
+            if (pinned.test(entry.getKey())) {
+                skipped.add(entry.getKey());
+                continue;
+            }
+
+            iterator.remove();
+            weight -= entry.getValue().weight;
+            evictions.increment();
+        }
+
+        // Move pinned entries to the young end so the next eviction does not scan them again
+        skipped.forEach(map::get);
+    }
+
+    private record Node<V>(V value, int weight) {
+    }
+
+    public record CacheStats(int size, long weight, long maxWeight, long hits, long misses, long evictions) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%d weight=%d/%d hits=%d misses=%d hit-rate=%.1f%% evictions=%d",
+                    size, weight, maxWeight, hits, misses, hitRate() * 100, evictions);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.monxef.gbank.storage.cache;
+
+import org.monxef.gbank.objects.PlayerProfile;
+import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.StorageHandler;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Profile cache in front of another storage handler, meant for the network
+ * backends. Loads are served from memory until the entry expires, and every
+ * write drops the entry. The loaded profile itself is cached, so every load it
+ * serves returns the same instance, like concurrent loads sharing one read.
+ * Saves only persist the changed currencies, so the saved profile is not a
+ * reliable copy of the stored one and is not cached.
+ * <p>
+ * A load is only cached when no write to the same player was running while it
+ * was read, so a slow load cannot put older balances back. Writes made by other
+ * servers sharing the database are seen once the entry expires.
+ */
+public class CachingStorageHandler implements StorageHandler {
+    private static final int STRIPES = 256;
+
+    private final StorageHandler delegate;
+    private final BoundedCache<UUID, CachedProfile> cache;
+    private final long ttlMillis;
+    // Per stripe of players: writes started so far, and writes still running
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final AtomicIntegerArray writing = new AtomicIntegerArray(STRIPES);
+
+    /**
+     * @param delegate The backend doing the actual storage
+     * @param maxProfiles Maximum number of cached profiles
+     * @param ttl How long a profile is served from memory
+     */
+    public CachingStorageHandler(StorageHandler delegate, int maxProfiles, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = new BoundedCache<>(maxProfiles, profile -> 1, playerId -> false);
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
+        CachedProfile cached = cache.get(playerId);
+        if (cached != null) {
+            if (cached.expiresAt > System.currentTimeMillis()) {
+                return CompletableFuture.completedFuture(Optional.of(cached.profile()));
+            }
+            cache.remove(playerId);
+        }
+
+        int stripe = stripe(playerId);
+        long version = versions.get(stripe);
+        return delegate.loadProfile(playerId).thenApply(profile -> {
+            profile.ifPresent(loaded -> cacheIfUnchanged(playerId, stripe, version, loaded));
+            return profile;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
+        UUID playerId = profile.getPlayerId();
+        int stripe = beginWrite(playerId);
+        return delegate.saveProfile(profile)
+                .whenComplete((result, error) -> endWrite(playerId, stripe));
+    }
+
+    @Override
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        int stripe = beginWrite(playerId);
+        return delegate.credit(playerId, currency, amount)
+                .whenComplete((result, error) -> endWrite(playerId, stripe));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        int stripe = beginWrite(playerId);
+        return delegate.debit(playerId, currency, amount)
+                .whenComplete((result, error) -> endWrite(playerId, stripe));
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        int stripe = beginWrite(playerId);
+        return delegate.setBalance(playerId, currency, amount)
+                .whenComplete((result, error) -> endWrite(playerId, stripe));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        int fromStripe = beginWrite(from);
+        int toStripe = beginWrite(to);
+        return delegate.transfer(from, to, currency, debit, credit).whenComplete((result, error) -> {
+            endWrite(from, fromStripe);
+            endWrite(to, toStripe);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
+        return delegate.saveTransaction(playerId, currency, transaction);
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
+        return delegate.getTransactions(playerId, currency, limit);
+    }
+
+    @Override
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        return delegate.getTransactions(query);
+    }
+
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return delegate.trimTransactions(policy, after, accounts);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>(delegate.getStatistics());
+        statistics.put("profile-cache", cache.stats());
+        return statistics;
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public boolean close(Duration timeout) {
+        boolean drained = delegate.close(timeout);
+        cache.clear();
+        return drained;
+    }
+
+    private int beginWrite(UUID playerId) {
+        int stripe = stripe(playerId);
+        writing.incrementAndGet(stripe);
+        versions.incrementAndGet(stripe);
+        cache.remove(playerId);
+        return stripe;
+    }
+
+    private void endWrite(UUID playerId, int stripe) {
+        versions.incrementAndGet(stripe);
+        writing.decrementAndGet(stripe);
+        cache.remove(playerId);
+    }
+
+    private void cacheIfUnchanged(UUID playerId, int stripe, long version, PlayerProfile profile) {
+        if (writing.get(stripe) != 0 || versions.get(stripe) != version) {
+            return;
+        }
+
+        cache.put(playerId, new CachedProfile(profile, System.currentTimeMillis() + ttlMillis));
+        // A write may have started between the check and the put
+        if (writing.get(stripe) != 0 || versions.get(stripe) != version) {
+            cache.remove(playerId);
+        }
+    }
+
+    private static int stripe(UUID playerId) {
+        return (playerId.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private record CachedProfile(PlayerProfile profile, long expiresAt) {
+    }
+}
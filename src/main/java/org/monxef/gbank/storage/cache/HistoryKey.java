@@ -0,0 +1,42 @@
+package org.monxef.gbank.storage.cache;
+
+import java.util.UUID;
+
+/**
+ * Identifies the transaction history of one player in one currency.
+ * Keys are ordered by the textual player id, then by currency, the same order
+ * databases use for the columns holding them.
+ */
+public record HistoryKey(UUID playerId, String currency) implements Comparable<HistoryKey> {
+    private static final int UUID_LENGTH = 36;
+
+    /**
+     * Parses a base file name produced by {@link #fileName()}.
+     *
+     * @return The key, or null if the name does not belong to a history
+     */
+    public static HistoryKey fromFileName(String name) {
+        if (name.length() <= UUID_LENGTH + 1 || name.charAt(UUID_LENGTH) != '_') {
+            return null;
+        }
+
+        try {
+            return new HistoryKey(UUID.fromString(name.substring(0, UUID_LENGTH)), name.substring(UUID_LENGTH + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The base file name used for this history, {@code <uuid>_<currency>}
+     */
+    public String fileName() {
+        return playerId.toString() + "_" + currency;
+    }
+
+    @Override
+    public int compareTo(HistoryKey other) {
+        int result = playerId.toString().compareTo(other.playerId.toString());
+        return result != 0 ? result : currency.compareTo(other.currency);
+    }
+}
@@ -0,0 +1,208 @@
+package org.monxef.gbank.storage.cache;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Tells a network backend which players certainly have no stored account, so
+ * their lookups can skip the database.
+ * <p>
+ * Existing accounts are held in a {@link BloomFilter} built by scanning the
+ * backend, and every write adds its players before it is sent. The filter is
+ * rebuilt periodically so it grows with the number of accounts. Ids the filter
+ * mistakes for accounts are remembered for a short time once the database
+ * confirmed they have none.
+ * <p>
+ * Only writes made through this server reach the filter, so it must only be
+ * enabled when no other server uses the same database: an account created
+ * elsewhere would read as missing until the next rebuild.
+ */
+public class KnownAccounts {
+    private static final int STRIPES = 256;
+
+    private final boolean enabled;
+    private final long expectedAccounts;
+    private final double falsePositiveRate;
+    private final long refreshMillis;
+    private final long negativeTtlMillis;
+    private final BoundedCache<UUID, Long> negatives;
+    // Bumped by every write, a miss is only remembered if no write happened while it was read
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile BloomFilter filter;
+    private volatile long builtAt;
+    private BloomFilter building;
+    private long accounts;
+
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    /**
+     * @param expectedAccounts Minimum capacity of the filter, it grows with the number of accounts found
+     * @param falsePositiveRate Share of missing accounts still sent to the database
+     * @param refresh Time between two rebuilds of the filter
+     * @param negativeTtl How long a confirmed missing account is remembered
+     * @param maxNegatives Maximum number of remembered missing accounts
+     */
+    public KnownAccounts(long expectedAccounts, double falsePositiveRate, Duration refresh, Duration negativeTtl, int maxNegatives) {
+        this(true, expectedAccounts, falsePositiveRate, refresh, negativeTtl, maxNegatives);
+    }
+
+    private KnownAccounts(boolean enabled, long expectedAccounts, double falsePositiveRate, Duration refresh,
+                          Duration negativeTtl, int maxNegatives) {
+        this.enabled = enabled;
+        this.expectedAccounts = expectedAccounts;
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshMillis = refresh.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+        this.negatives = new BoundedCache<>(maxNegatives, expiresAt -> 1, playerId -> false);
+    }
+
+    /**
+     * @return An instance that never reports an account as missing
+     */
+    public static KnownAccounts disabled() {
+        return new KnownAccounts(false, 0, 0, Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    /**
+     * @return true if the player certainly has no stored account
+     */
+    public boolean isMissing(UUID playerId) {
+        if (!enabled) {
+            return false;
+        }
+
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(playerId)) {
+            filtered.increment();
+            return true;
+        }
+
+        Long expiresAt = negatives.peek(playerId);
+        if (expiresAt != null) {
+            if (expiresAt > System.currentTimeMillis()) {
+                negativeHits.increment();
+                return true;
+            }
+            negatives.remove(playerId);
+        }
+        return false;
+    }
+
+    /**
+     * Must be called before a write that may create the player's account is sent.
+     */
+    public synchronized void add(UUID playerId) {
+        if (!enabled) {
+            return;
+        }
+
+        versions.incrementAndGet(stripe(playerId));
+        negatives.remove(playerId);
+        if (filter != null) {
+            filter.add(playerId);
+        }
+        if (building != null) {
+            building.add(playerId);
+        }
+    }
+
+    /**
+     * @return Token to pass to {@link #missing(UUID, long)}, taken before the database is read
+     */
+    public long version(UUID playerId) {
+        return versions.get(stripe(playerId));
+    }
+
+    /**
+     * Remembers that the database has no account for the player, unless a write
+     * to it started since {@code version} was taken.
+     */
+    public void missing(UUID playerId, long version) {
+        if (!enabled) {
+            return;
+        }
+
+        negatives.put(playerId, System.currentTimeMillis() + negativeTtlMillis);
+        if (versions.get(stripe(playerId)) != version) {
+            negatives.remove(playerId);
+        }
+    }
+
+    /**
+     * Claims the next rebuild when the filter was never built or is due for a
+     * refresh. The caller must then run {@link #rebuild(AccountScanner)}.
+     *
+     * @return false if no rebuild is needed or another one is running
+     */
+    public boolean claimRebuild() {
+        if (!enabled || (filter != null && System.currentTimeMillis() - builtAt < refreshMillis)) {
+            return false;
+        }
+        return rebuilding.compareAndSet(false, true);
+    }
+
+    /**
+     * Builds a new filter from every stored account and swaps it in. Players added
+     * during the scan go into both filters.
+     */
+    public void rebuild(AccountScanner scanner) throws Exception {
+        try {
+            BloomFilter next;
+            synchronized (this) {
+                next = BloomFilter.create(Math.max(expectedAccounts, accounts * 2), falsePositiveRate);
+                building = next;
+            }
+
+            long[] count = {0};
+            scanner.scan(playerId -> {
+                next.add(playerId);
+                count[0]++;
+            });
+
+            synchronized (this) {
+                filter = next;
+                accounts = count[0];
+                builtAt = System.currentTimeMillis();
+            }
+        } finally {
+            synchronized (this) {
+                building = null;
+            }
+            rebuilding.set(false);
+        }
+    }
+
+    public synchronized FilterStats stats() {
+        return new FilterStats(filter != null, accounts, filter != null ? filter.bitSize() : 0,
+                filter != null ? filter.hashes() : 0, filtered.sum(), negatives.size(), negativeHits.sum());
+    }
+
+    private static int stripe(UUID playerId) {
+        return (playerId.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    /**
+     * Streams the id of every stored account.
+     */
+    @FunctionalInterface
+    public interface AccountScanner {
+        void scan(Consumer<UUID> sink) throws Exception;
+    }
+
+    public record FilterStats(boolean ready, long accounts, long bits, int hashes, long filtered,
+                              int negatives, long negativeHits) {
+
+        @Override
+        public String toString() {
+            return String.format("ready=%s accounts=%d bits=%d hashes=%d skipped=%d negatives=%d negative-hits=%d",
+                    ready, accounts, bits, hashes, filtered, negatives, negativeHits);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.monxef.gbank.storage.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key. While a call is in flight, later
+ * callers for that key receive a copy of its future instead of starting their
+ * own, so they all observe the same result object.
+ *
+ * @param <K> The key type
+ * @param <V> The result type
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param key The key identifying the call
+     * @param call Starts the call, only invoked when none is in flight for the key
+     * @return The future of the call, or a copy of it for callers that joined one in flight
+     */
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+        boolean[] started = {false};
+        CompletableFuture<V> future = inFlight.computeIfAbsent(key, k -> {
+            started[0] = true;
+            return call.get();
+        });
+
+        if (!started[0]) {
+            coalesced.increment();
+            return future.copy();
+        }
+
+        calls.increment();
+        // Registered outside computeIfAbsent, the future may already be complete
+        future.whenComplete((result, error) -> inFlight.remove(key, future));
+        return future;
+    }
+
+    /**
+     * Stops sharing the call in flight for the key, later callers start a new one.
+     * Callers already waiting on it still receive its result.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public FlightStats stats() {
+        return new FlightStats(inFlight.size(), calls.sum(), coalesced.sum());
+    }
+
+    public record FlightStats(int inFlight, long calls, long coalesced) {
+
+        @Override
+        public String toString() {
+            return String.format("in-flight=%d calls=%d coalesced=%d", inFlight, calls, coalesced);
+        }
+    }
+}
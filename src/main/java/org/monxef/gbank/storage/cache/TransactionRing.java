@@ -0,0 +1,61 @@
+package org.monxef.gbank.storage.cache;
+
+import org.monxef.gbank.objects.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-capacity ring of the most recent transactions of one player and currency.
+ */
+public class TransactionRing {
+    private final Transaction[] entries;
+    private int head;
+    private int size;
+    private boolean complete;
+
+    /**
+     * @param capacity The number of transactions to keep
+     * @param newestFirst The latest transactions read from storage, newest first
+     * @param complete Whether {@code newestFirst} is the whole history
+     */
+    public TransactionRing(int capacity, List<Transaction> newestFirst, boolean complete) {
+        this.entries = new Transaction[capacity];
+        this.complete = complete && newestFirst.size() <= capacity;
+
+        for (int i = Math.min(capacity, newestFirst.size()) - 1; i >= 0; i--) {
+            add(newestFirst.get(i));
+        }
+    }
+
+    public synchronized void add(Transaction transaction) {
+        if (size == entries.length) {
+            complete = false;
+        } else {
+            size++;
+        }
+        entries[head] = transaction;
+        head = (head + 1) % entries.length;
+    }
+
+    /**
+     * @return Up to {@code limit} transactions newest first, or null if the ring
+     * holds fewer than asked for while older ones exist in storage
+     */
+    public synchronized List<Transaction> latest(int limit) {
+        if (limit > size && !complete) {
+            return null;
+        }
+
+        int count = Math.min(limit, size);
+        List<Transaction> latest = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            latest.add(entries[(head - i + entries.length) % entries.length]);
+        }
+        return latest;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+}
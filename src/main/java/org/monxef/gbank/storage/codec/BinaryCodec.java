@@ -0,0 +1,175 @@
+package org.monxef.gbank.storage.codec;
+
+import org.monxef.gbank.enums.TransactionType;
+import org.monxef.gbank.objects.Money;
+import org.monxef.gbank.objects.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary format.
+ * <p>
+ * Balances: {@code [version][varint count]} followed by {@code [varint currency ordinal][scale][zigzag varlong minor]}
+ * per currency. Transactions: {@code [version][type ordinal][scale][zigzag varlong minor][varlong timestamp][details]}
+ * where details is a varint of the UTF-8 length plus one (0 meaning null) followed by the bytes.
+ * Amounts are exact minor units with the decimals they were written with, balances are rescaled to
+ * the currency's current decimals when read. Version 1 records have no scale byte and hold cents.
+ */
+public class BinaryCodec implements StorageCodec {
+    private static final int VERSION = 2;
+    private static final int LEGACY_VERSION = 1;
+    private static final int LEGACY_SCALE = 2;
+
+    private final CurrencyDictionary dictionary;
+
+    public BinaryCodec(CurrencyDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public String getName() {
+        return "bin";
+    }
+
+    @Override
+    public byte[] encodeBalances(Map<String, Long> balances) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + balances.size() * 7);
+        out.write(VERSION);
+        writeVarLong(out, balances.size());
+        for (Map.Entry<String, Long> entry : balances.entrySet()) {
+            writeVarLong(out, dictionary.ordinal(entry.getKey()));
+            out.write(Money.scale(entry.getKey()));
+            writeVarLong(out, zigZag(entry.getValue()));
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Map<String, Long> decodeBalances(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        int version = in.readVersion();
+
+        int count = (int) in.readVarLong();
+        Map<String, Long> balances = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String currency = dictionary.currency((int) in.readVarLong());
+            int scale = version == LEGACY_VERSION ? LEGACY_SCALE : in.readScale();
+            balances.put(currency, Money.rescale(unZigZag(in.readVarLong()), scale, Money.scale(currency)));
+        }
+        return balances;
+    }
+
+    @Override
+    public byte[] encodeTransaction(Transaction transaction) throws IOException {
+        byte[] details = transaction.getDetails() != null
+                ? transaction.getDetails().getBytes(StandardCharsets.UTF_8)
+                : null;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(24 + (details != null ? details.length : 0));
+        out.write(VERSION);
+        out.write(transaction.getType().ordinal());
+        out.write(transaction.getScale());
+        writeVarLong(out, zigZag(transaction.getAmount()));
+        writeVarLong(out, transaction.getTimestamp());
+        if (details == null) {
+            writeVarLong(out, 0);
+        } else {
+            writeVarLong(out, details.length + 1L);
+            out.write(details);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Transaction decodeTransaction(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        int version = in.readVersion();
+
+        TransactionType[] types = TransactionType.values();
+        int type = in.readByte();
+        if (type >= types.length) {
+            throw new IOException("Unknown transaction type " + type);
+        }
+
+        int scale = version == LEGACY_VERSION ? LEGACY_SCALE : in.readScale();
+        long amount = unZigZag(in.readVarLong());
+        long timestamp = in.readVarLong();
+        int detailsLength = (int) in.readVarLong();
+        String details = detailsLength == 0 ? null : in.readString(detailsLength - 1);
+
+        return new Transaction(types[type], amount, scale, timestamp, details);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readVersion() throws IOException {
+            int version = readByte();
+            if (version != VERSION && version != LEGACY_VERSION) {
+                throw new IOException("Unsupported binary record version " + version);
+            }
+            return version;
+        }
+
+        int readScale() throws IOException {
+            int scale = readByte();
+            if (scale > Money.MAX_SCALE) {
+                throw new IOException("Unsupported amount scale " + scale);
+            }
+            return scale;
+        }
+
+        int readByte() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("Truncated binary record");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString(int length) throws IOException {
+            if (length < 0 || position + length > data.length) {
+                throw new IOException("Truncated binary record");
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
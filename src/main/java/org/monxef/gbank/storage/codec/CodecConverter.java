@@ -0,0 +1,137 @@
+package org.monxef.gbank.storage.codec;
+
+import org.monxef.gbank.storage.journal.TransactionJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Rewrites stored profiles and transaction journals from one codec to another,
+ * so switching {@code storage.file-format} keeps existing data readable.
+ */
+public class CodecConverter {
+    private static final String FORMAT_FILE = "format";
+
+    /**
+     * Converts every {@code <uuid>.<from>} profile file in the folder to the target codec.
+     *
+     * @return The number of converted profiles
+     */
+    public static int convertProfiles(File folder, StorageCodec from, StorageCodec to) throws IOException {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith("." + from.getName()));
+        if (files == null || from.getName().equals(to.getName())) {
+            return 0;
+        }
+
+        int converted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            String baseName = name.substring(0, name.length() - from.getName().length() - 1);
+
+            byte[] data = to.encodeBalances(from.decodeBalances(Files.readAllBytes(file.toPath())));
+            Files.write(new File(folder, baseName + "." + to.getName()).toPath(), data);
+            Files.delete(file.toPath());
+            converted++;
+        }
+        return converted;
+    }
+
+    /**
+     * Converts every journal in the folder to the target codec. The codec the journals
+     * are written with is tracked in a {@code format} file next to them; journals without
+     * one predate the binary format and are JSON.
+     * <p>
+     * The marker is only rewritten once every journal is converted. Until then each
+     * journal's codec is read from its first record, so a conversion interrupted by
+     * a crash or a failing journal resumes where it stopped instead of decoding the
+     * journals already converted with the old codec.
+     *
+     * @param folder The transactions folder
+     * @param dataFolder The plugin data folder, holding the currency dictionary
+     * @param to The codec the journals should use
+     * @return The number of converted journals
+     * @throws IOException if a journal could not be converted, after trying all the others
+     */
+    public static int convertJournals(File folder, File dataFolder, StorageCodec to) throws IOException {
+        File formatFile = new File(folder, FORMAT_FILE);
+        String current = formatFile.exists()
+                ? Files.readString(formatFile.toPath(), StandardCharsets.UTF_8).trim()
+                : "json";
+
+        int converted = 0;
+        if (!current.equals(to.getName())) {
+            File[] files = folder.listFiles((dir, name) -> name.endsWith(".journal"));
+            Map<String, StorageCodec> codecs = new HashMap<>();
+            IOException failure = null;
+
+            for (File file : files != null ? files : new File[0]) {
+                try {
+                    if (convertJournal(file, format -> codecs.computeIfAbsent(format,
+                            name -> StorageCodec.of(name, dataFolder)), to)) {
+                        converted++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    IOException error = new IOException("Could not convert " + file.getName(), e);
+                    if (failure == null) {
+                        failure = error;
+                    } else {
+                        failure.addSuppressed(error);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        folder.mkdirs();
+        Files.writeString(formatFile.toPath(), to.getName(), StandardCharsets.UTF_8);
+        return converted;
+    }
+
+    /**
+     * @return The name of the codec a record was written with: JSON records are
+     * objects, binary records start with their version byte
+     */
+    static String detect(byte[] record) {
+        return record.length > 0 && record[0] == '{' ? "json" : "bin";
+    }
+
+    /**
+     * @return false if the journal is empty or already written with the target codec
+     */
+    private static boolean convertJournal(File file, Function<String, StorageCodec> codecs, StorageCodec to)
+            throws IOException {
+        TransactionJournal source = new TransactionJournal(file);
+        if (source.size() == 0) {
+            return false;
+        }
+        String format = detect(source.read(0));
+        if (format.equals(to.getName())) {
+            return false;
+        }
+
+        StorageCodec from = codecs.apply(format);
+        List<byte[]> records = source.readLatest(source.size());
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.deleteIfExists(temp.toPath());
+        // Same numbers, so history cursors handed out before the conversion stay valid
+        TransactionJournal target = new TransactionJournal(temp, source.firstNumber());
+
+        // readLatest is newest first, append oldest first to keep the order
+        for (int i = records.size() - 1; i >= 0; i--) {
+            target.append(to.encodeTransaction(from.decodeTransaction(records.get(i))));
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+}
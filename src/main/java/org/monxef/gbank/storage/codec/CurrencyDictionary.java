@@ -0,0 +1,75 @@
+package org.monxef.gbank.storage.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only list of currency ids, one per line. The line number is the
+ * ordinal written to disk, so ordinals never change once assigned.
+ */
+public class CurrencyDictionary {
+    private final File file;
+    private final List<String> currencies = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    public CurrencyDictionary(File file) {
+        this.file = file;
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    ordinals.put(line.trim(), currencies.size());
+                    currencies.add(line.trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read currency dictionary " + file.getName(), e);
+        }
+    }
+
+    /**
+     * @return The ordinal of the currency, or -1 if none was assigned yet
+     */
+    public synchronized int indexOf(String currency) {
+        return ordinals.getOrDefault(currency, -1);
+    }
+
+    /**
+     * @return The ordinal of the currency, assigning and persisting a new one if needed
+     */
+    public synchronized int ordinal(String currency) throws IOException {
+        Integer ordinal = ordinals.get(currency);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), currency + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ordinals.put(currency, currencies.size());
+        currencies.add(currency);
+        return currencies.size() - 1;
+    }
+
+    public synchronized String currency(int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= currencies.size()) {
+            throw new IOException("Unknown currency ordinal " + ordinal);
+        }
+        return currencies.get(ordinal);
+    }
+
+    public synchronized int size() {
+        return currencies.size();
+    }
+}
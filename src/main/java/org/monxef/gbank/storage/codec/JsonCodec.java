@@ -0,0 +1,86 @@
+package org.monxef.gbank.storage.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import org.monxef.gbank.enums.TransactionType;
+import org.monxef.gbank.objects.Money;
+import org.monxef.gbank.objects.Transaction;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Human readable format, meant for debugging. Amounts are written as exact
+ * decimals with the decimals of their currency.
+ */
+public class JsonCodec implements StorageCodec {
+    private static final Type BALANCES_TYPE = new TypeToken<Map<String, BigDecimal>>(){}.getType();
+
+    private final Gson prettyGson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson gson = new Gson();
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encodeBalances(Map<String, Long> balances) {
+        Map<String, BigDecimal> decimals = new LinkedHashMap<>(balances.size() * 2);
+        balances.forEach((currency, amount) -> decimals.put(currency, Money.toDecimal(amount, Money.scale(currency))));
+        return prettyGson.toJson(decimals, BALANCES_TYPE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Map<String, Long> decodeBalances(byte[] data) {
+        Map<String, BigDecimal> decimals = gson.fromJson(new String(data, StandardCharsets.UTF_8), BALANCES_TYPE);
+        Map<String, Long> balances = new HashMap<>();
+        if (decimals != null) {
+            decimals.forEach((currency, amount) -> balances.put(currency, Money.of(amount, Money.scale(currency))));
+        }
+        return balances;
+    }
+
+    @Override
+    public byte[] encodeTransaction(Transaction transaction) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", transaction.getType().name());
+        json.addProperty("amount", transaction.toDecimal());
+        json.addProperty("scale", transaction.getScale());
+        json.addProperty("timestamp", transaction.getTimestamp());
+        if (transaction.getDetails() != null) {
+            json.addProperty("details", transaction.getDetails());
+        }
+        return gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Transaction decodeTransaction(byte[] data) {
+        return decodeTransaction(gson.fromJson(new String(data, StandardCharsets.UTF_8), JsonObject.class));
+    }
+
+    /**
+     * Reads a transaction object, also those of the legacy history files, which
+     * hold the amount as a plain decimal without its scale.
+     */
+    public static Transaction decodeTransaction(JsonObject json) {
+        BigDecimal amount = json.get("amount").getAsBigDecimal();
+        // Records written before amounts were exact have no scale
+        int scale = json.has("scale")
+                ? json.get("scale").getAsInt()
+                : Math.min(Money.MAX_SCALE, Math.max(Money.DEFAULT_SCALE, amount.scale()));
+
+        return new Transaction(
+                TransactionType.valueOf(json.get("type").getAsString()),
+                Money.of(amount, scale),
+                scale,
+                json.get("timestamp").getAsLong(),
+                json.has("details") && !json.get("details").isJsonNull() ? json.get("details").getAsString() : null);
+    }
+}
@@ -0,0 +1,38 @@
+package org.monxef.gbank.storage.codec;
+
+import org.monxef.gbank.objects.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes profile balances and transaction records for the file based backends.
+ * Balances are in minor units of their currency, see {@link org.monxef.gbank.objects.Money}.
+ */
+public interface StorageCodec {
+
+    /**
+     * @return The format name, also used as the profile file extension
+     */
+    String getName();
+
+    byte[] encodeBalances(Map<String, Long> balances) throws IOException;
+    Map<String, Long> decodeBalances(byte[] data) throws IOException;
+    byte[] encodeTransaction(Transaction transaction) throws IOException;
+    Transaction decodeTransaction(byte[] data) throws IOException;
+
+    /**
+     * Creates the codec configured by {@code storage.file-format}.
+     *
+     * @param format Either "binary" or "json"
+     * @param dataFolder The plugin data folder, holding the currency dictionary
+     * @return The codec, binary for anything that is not "json"
+     */
+    static StorageCodec of(String format, File dataFolder) {
+        if ("json".equalsIgnoreCase(format)) {
+            return new JsonCodec();
+        }
+        return new BinaryCodec(new CurrencyDictionary(new File(dataFolder, "currencies.dict")));
+    }
+}
@@ -0,0 +1,24 @@
+package org.monxef.gbank.storage.history;
+
+/**
+ * How much transaction history is kept per player and currency.
+ *
+ * @param maxPerAccount Newest transactions kept per history, 0 for no count limit
+ * @param maxAgeMillis Age after which transactions are removed, 0 for no age limit
+ */
+public record RetentionPolicy(int maxPerAccount, long maxAgeMillis) {
+
+    /**
+     * @return true if neither limit is set and nothing would ever be removed
+     */
+    public boolean keepsAll() {
+        return maxPerAccount <= 0 && maxAgeMillis <= 0;
+    }
+
+    /**
+     * @return The timestamp below which transactions are expired, or {@link Long#MIN_VALUE} without age limit
+     */
+    public long ageCutoff(long now) {
+        return maxAgeMillis > 0 ? now - maxAgeMillis : Long.MIN_VALUE;
+    }
+}
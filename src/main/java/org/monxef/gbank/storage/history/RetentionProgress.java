@@ -0,0 +1,17 @@
+package org.monxef.gbank.storage.history;
+
+import org.monxef.gbank.storage.cache.HistoryKey;
+
+/**
+ * Outcome of one retention step.
+ *
+ * @param accounts Number of histories visited by the step
+ * @param removed Number of transactions removed
+ * @param next Last history visited, to pass to the next step, or null once every history was visited
+ */
+public record RetentionProgress(int accounts, long removed, HistoryKey next) {
+
+    public boolean isComplete() {
+        return next == null;
+    }
+}
@@ -0,0 +1,37 @@
+package org.monxef.gbank.storage.history;
+
+/**
+ * Position of the last transaction of a page. The next page starts right after it.
+ *
+ * @param timestamp Timestamp of the last transaction returned
+ * @param id Backend specific tie-breaker for transactions sharing a timestamp
+ *           (row id, document id or journal record number)
+ */
+public record TransactionCursor(long timestamp, String id) {
+
+    /**
+     * Parses a cursor previously produced by {@link #toString()}.
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static TransactionCursor parse(String token) {
+        int separator = token.indexOf(':');
+        if (separator <= 0 || separator == token.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+
+        try {
+            return new TransactionCursor(Long.parseLong(token.substring(0, separator)), token.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    /**
+     * @return An opaque token that can be shown to users and parsed back
+     */
+    @Override
+    public String toString() {
+        return timestamp + ":" + id;
+    }
+}
@@ -0,0 +1,18 @@
+package org.monxef.gbank.storage.history;
+
+import org.monxef.gbank.objects.Transaction;
+
+import java.util.List;
+
+/**
+ * One page of a transaction history, newest first.
+ *
+ * @param transactions The transactions of this page
+ * @param next Cursor for the following page, or null if this is the last one
+ */
+public record TransactionPage(List<Transaction> transactions, TransactionCursor next) {
+
+    public boolean hasMore() {
+        return next != null;
+    }
+}
@@ -0,0 +1,52 @@
+package org.monxef.gbank.storage.history;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.monxef.gbank.enums.TransactionType;
+import org.monxef.gbank.objects.Transaction;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Filters and position of a transaction history page. Pages are keyed on
+ * (timestamp, id) rather than an offset, so a deep page costs the same as the
+ * first one.
+ */
+@Getter
+@Builder
+public class TransactionQuery {
+    private final UUID playerId;
+    private final String currency;
+    @Builder.Default
+    private final int limit = 10;
+    /**
+     * Types to include, null or empty for every type
+     */
+    private final Set<TransactionType> types;
+    /**
+     * Inclusive lower bound of the timestamp, or null
+     */
+    private final Long from;
+    /**
+     * Exclusive upper bound of the timestamp, or null
+     */
+    private final Long to;
+    /**
+     * Cursor of the previous page, or null for the first page
+     */
+    private final TransactionCursor after;
+
+    /**
+     * @return Whether the transaction passes the type and time filters
+     */
+    public boolean matches(Transaction transaction) {
+        if (types != null && !types.isEmpty() && !types.contains(transaction.getType())) {
+            return false;
+        }
+        if (from != null && transaction.getTimestamp() < from) {
+            return false;
+        }
+        return to == null || transaction.getTimestamp() < to;
+    }
+}
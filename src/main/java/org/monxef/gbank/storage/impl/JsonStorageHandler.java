@@ -1,102 +1,259 @@
 package org.monxef.gbank.storage.impl;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import org.bukkit.Bukkit;
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.objects.Transaction;
-import org.monxef.gbank.storage.StorageHandler;
+import org.monxef.gbank.storage.AbstractStorageHandler;
+import org.monxef.gbank.storage.AccountLocks;
+import org.monxef.gbank.storage.batch.BatchWriter;
+import org.monxef.gbank.storage.StorageExecutor;
+import org.monxef.gbank.storage.cache.BoundedCache;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.codec.CodecConverter;
+import org.monxef.gbank.storage.codec.StorageCodec;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+import org.monxef.gbank.storage.journal.JournalStore;
+import org.monxef.gbank.storage.journal.WriteAheadLog;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
-public class JsonStorageHandler implements StorageHandler {
+public class JsonStorageHandler extends AbstractStorageHandler {
+    private final GBank plugin;
     private final File dataFolder;
     private final File transactionsFolder;
-    private final Gson gson;
-    private final Map<UUID, PlayerProfile> cache;
-    private final Map<UUID, List<Transaction>> transactionCache;
+    private final StorageCodec codec;
+    private final JournalStore journals;
+    private final BoundedCache<UUID, PlayerProfile> cache;
+    private final Set<UUID> dirty;
+    private final long saveInterval;
+    // Null unless write-behind is on, otherwise every change is in its profile file already
+    private final WriteAheadLog wal;
 
-    public JsonStorageHandler(GBank plugin) {
+    public JsonStorageHandler(GBank plugin, StorageExecutor executor) {
+        super(executor);
+        this.plugin = plugin;
         this.dataFolder = new File(plugin.getDataFolder(), "playerdata");
-        this.transactionsFolder = new File(plugin.getDataFolder(), "transactions");
         if (!dataFolder.exists()) {
             dataFolder.mkdirs();
         }
-        if (!transactionsFolder.exists()) {
-            transactionsFolder.mkdirs();
-        }
+        this.transactionsFolder = new File(plugin.getDataFolder(), "transactions");
+
+        this.codec = StorageCodec.of(plugin.getConfig().getString("storage.file-format", "binary"), plugin.getDataFolder());
+        this.journals = new JournalStore(transactionsFolder, codec,
+                plugin.getConfig().getInt("storage.history-cache.size", 20),
+                plugin.getConfig().getLong("storage.history-cache.max-transactions", 50000),
+                plugin.getConfig().getLong("storage.history-cache.max-indexed-records", 1000000),
+                playerId -> Bukkit.getPlayer(playerId) != null);
 
-        this.gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .create();
+        // Online players and profiles waiting for a write-behind flush are never evicted
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.cache = new BoundedCache<>(
+                plugin.getConfig().getLong("storage.json.cache.max-profiles", 10000),
+                profile -> 1,
+                playerId -> dirty.contains(playerId) || Bukkit.getPlayer(playerId) != null);
 
-        this.cache = new ConcurrentHashMap<>();
-        this.transactionCache = new ConcurrentHashMap<>();
+        // Seconds between write-behind flushes, 0 or less writes every save straight to disk
+        this.saveInterval = plugin.getConfig().getLong("storage.json.save-interval", 300);
+        this.wal = saveInterval > 0 && plugin.getConfig().getBoolean("storage.json.wal.enabled", true)
+                ? new WriteAheadLog(new File(plugin.getDataFolder(), "wal"), new BatchWriter.Settings(
+                        plugin.getConfig().getInt("storage.json.wal.queue-size", 10000),
+                        plugin.getConfig().getInt("storage.json.wal.max-size", 500),
+                        plugin.getConfig().getLong("storage.json.wal.linger-ms", 2),
+                        plugin.getConfig().getLong("storage.json.wal.queue-timeout-ms", 100)))
+                : null;
     }
 
     @Override
-    public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
-        return CompletableFuture.supplyAsync(() -> {
-            // Check cache first
-            if (cache.containsKey(playerId)) {
-                return Optional.of(cache.get(playerId));
-            }
-
-            File playerFile = new File(dataFolder, playerId.toString() + ".json");
-            if (!playerFile.exists()) {
-                PlayerProfile newProfile = new PlayerProfile(playerId);
-                cache.put(playerId, newProfile);
-                return Optional.of(newProfile);
-            }
+    public void start() {
+        convertStoredData();
+        recover();
 
-            try (FileReader reader = new FileReader(playerFile)) {
-                Type type = new TypeToken<Map<String, Double>>(){}.getType();
-                Map<String, Double> balances = gson.fromJson(reader, type);
-
-                PlayerProfile profile = new PlayerProfile(playerId);
-                balances.forEach(profile::setBalance);
+        if (saveInterval > 0) {
+            long ticks = saveInterval * 20L;
+            Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::saveAll, ticks, ticks);
+        }
+    }
 
-                cache.put(playerId, profile);
-                return Optional.of(profile);
+    @Override
+    public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
+        return loadOnce(playerId, () -> supplyAsync(() -> {
+            try {
+                return Optional.of(readProfile(playerId));
             } catch (IOException e) {
                 e.printStackTrace();
                 return Optional.empty();
             }
-        });
+        }));
+    }
+
+    private PlayerProfile readProfile(UUID playerId) throws IOException {
+        // Check cache first
+        PlayerProfile cached = cache.get(playerId);
+        if (cached != null) {
+            return cached;
+        }
+
+        File playerFile = profileFile(playerId);
+        PlayerProfile profile = playerFile.exists()
+                ? new PlayerProfile(playerId, codec.decodeBalances(Files.readAllBytes(playerFile.toPath())))
+                : new PlayerProfile(playerId);
+        return cache.putIfAbsent(playerId, profile);
     }
 
     @Override
     public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
-        return CompletableFuture.runAsync(() -> {
-            File playerFile = new File(dataFolder, profile.getPlayerId().toString() + ".json");
+        if (saveInterval > 0) {
+            // Prepared under the lock so the entry is numbered after those of earlier credits
+            WriteAheadLog.Entry entry;
+            try (AccountLocks.Held held = lockAccount(profile.getPlayerId())) {
+                entry = markDirty(profile);
+            }
+            return written(log(entry), profile.getPlayerId());
+        }
 
-            try (FileWriter writer = new FileWriter(playerFile)) {
-                gson.toJson(profile.getBalances(), writer);
+        return written(runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(profile.getPlayerId())) {
+                writeProfile(profile);
                 cache.put(profile.getPlayerId(), profile);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        });
+        }), profile.getPlayerId());
+    }
+
+    @Override
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        return written(supplyAsync(() -> {
+            WriteAheadLog.Entry entry;
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                PlayerProfile profile = readProfile(playerId);
+                profile.credit(currency, amount);
+                entry = persist(profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return log(entry);
+        }).thenCompose(logged -> logged), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        return written(supplyAsync(() -> {
+            WriteAheadLog.Entry entry;
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                PlayerProfile profile = readProfile(playerId);
+                profile.setMinor(currency, amount);
+                entry = persist(profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return log(entry);
+        }).thenCompose(logged -> logged), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        return written(supplyAsync(() -> {
+            WriteAheadLog.Entry entry;
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                PlayerProfile profile = readProfile(playerId);
+                if (!profile.debit(currency, amount)) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                entry = persist(profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return log(entry).thenApply(logged -> true);
+        }).thenCompose(debited -> debited), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        return written(supplyAsync(() -> {
+            WriteAheadLog.Entry entry;
+            try (AccountLocks.Held held = lockAccounts(from, to)) {
+                PlayerProfile source = readProfile(from);
+                PlayerProfile target = readProfile(to);
+                if (!source.debit(currency, debit)) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                target.credit(currency, credit);
+                entry = persist(source, target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return log(entry).thenApply(logged -> true);
+        }).thenCompose(transferred -> transferred), from, to);
+    }
+
+    /**
+     * Marks cached profiles for the next write-behind flush, or writes them now
+     * when write-behind is disabled. Must be called under the profiles' locks.
+     *
+     * @return The write-ahead log entry to {@link #log(WriteAheadLog.Entry) log}
+     * once the locks are released, or null if there is none
+     */
+    private WriteAheadLog.Entry persist(PlayerProfile... profiles) throws IOException {
+        if (saveInterval > 0) {
+            return markDirty(profiles);
+        }
+
+        for (PlayerProfile profile : profiles) {
+            writeProfile(profile);
+        }
+        return null;
+    }
+
+    /**
+     * Marks profiles for the next write-behind flush and prepares their changed
+     * balances as one write-ahead log entry. Must be called under the profiles' locks.
+     *
+     * @return The prepared entry, or null if there is nothing to log
+     */
+    private WriteAheadLog.Entry markDirty(PlayerProfile... profiles) {
+        Map<UUID, Map<String, Long>> changes = new HashMap<>();
+        for (PlayerProfile profile : profiles) {
+            dirty.add(profile.getPlayerId());
+            cache.put(profile.getPlayerId(), profile);
+            Map<String, Long> changed = profile.getChanges();
+            if (!changed.isEmpty()) {
+                changes.put(profile.getPlayerId(), changed);
+            }
+        }
+        return wal != null && !changes.isEmpty() ? wal.prepare(changes) : null;
+    }
+
+    /**
+     * Appends a prepared entry. Called after releasing the account locks, the
+     * append waits while the log queue is full.
+     *
+     * @return CompletableFuture completed once the entry is synced
+     */
+    private CompletableFuture<Void> log(WriteAheadLog.Entry entry) {
+        return entry != null ? wal.append(entry) : CompletableFuture.completedFuture(null);
     }
 
     @Override
     public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
-        return CompletableFuture.runAsync(() -> {
-            File transactionFile = new File(transactionsFolder, playerId.toString() + "_" + currency + ".json");
-            List<Transaction> transactions = loadTransactionsFromFile(transactionFile);
-            transactions.add(transaction);
-
-            try (FileWriter writer = new FileWriter(transactionFile)) {
-                gson.toJson(transactions, writer);
-                
-                transactionCache.computeIfAbsent(playerId, k -> new ArrayList<>()).add(transaction);
+        return runAsync(() -> {
+            try {
+                journals.append(playerId, currency, transaction);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -104,56 +261,200 @@ public class JsonStorageHandler implements StorageHandler {
     }
 
     @Override
-    public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (transactionCache.containsKey(playerId)) {
-                List<Transaction> cachedTransactions = transactionCache.get(playerId);
-                return cachedTransactions.stream()
-                        .limit(limit)
-                        .toList();
-            }
-
-            File transactionFile = new File(transactionsFolder, playerId.toString() + "_" + currency + ".json");
-            List<Transaction> transactions = loadTransactionsFromFile(transactionFile);
-            
-            transactionCache.put(playerId, transactions);
-            
-            return transactions.stream()
-                    .limit(limit)
-                    .toList();
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        return supplyAsync(() -> {
+            try {
+                return journals.query(query);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         });
     }
 
-    private List<Transaction> loadTransactionsFromFile(File file) {
-        if (!file.exists()) {
-            return new ArrayList<>();
-        }
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return supplyAsync(() -> {
+            try {
+                return journals.trim(policy, after, accounts);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<List<Transaction>>(){}.getType();
-            List<Transaction> transactions = gson.fromJson(reader, type);
-            return transactions != null ? transactions : new ArrayList<>();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ArrayList<>();
-        }
+    @Override
+    public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
+        return supplyAsync(() -> {
+            try {
+                return journals.readLatest(playerId, currency, limit);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new ArrayList<>();
+            }
+        });
     }
 
-    public void saveAll() {
-        cache.values().forEach(profile -> {
+    /**
+     * Writes every profile that changed since the last flush in a single pass.
+     * This is also the write-ahead log checkpoint: the log is rolled first, and
+     * the older segments are deleted once every profile was written.
+     */
+    public synchronized void saveAll() {
+        WriteAheadLog.Checkpoint checkpoint = null;
+        if (wal != null) {
             try {
-                File playerFile = new File(dataFolder, profile.getPlayerId().toString() + ".json");
-                try (FileWriter writer = new FileWriter(playerFile)) {
-                    gson.toJson(profile.getBalances(), writer);
+                checkpoint = wal.begin();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to roll the write-ahead log", e);
+            }
+        }
+
+        boolean saved = true;
+        for (UUID playerId : dirty) {
+            // Stays dirty, and so pinned in the cache, until written under the lock
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                PlayerProfile profile = cache.peek(playerId);
+                if (profile == null) {
+                    // The pin should prevent this, do not complete the checkpoint on it
+                    saved = false;
+                } else if (profile.hasChanges()) {
+                    writeProfile(profile);
                 }
+                dirty.remove(playerId);
             } catch (IOException e) {
+                saved = false;
                 e.printStackTrace();
             }
-        });
+        }
+
+        if (checkpoint != null && saved) {
+            try {
+                // The profile files were moved in place, their names must be on disk too
+                WriteAheadLog.syncFolder(dataFolder);
+                wal.complete(checkpoint);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to complete the write-ahead log checkpoint", e);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        saveAll();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = super.getStatistics();
+        statistics.put("profile-cache", cache.stats());
+        statistics.put("transaction-cache", journals.getHistoryStats());
+        statistics.put("dirty-profiles", dirty.size());
+        if (wal != null) {
+            statistics.put("write-ahead-log", wal.stats());
+        }
+        return statistics;
+    }
+
+    @Override
+    protected void shutdown() {
+        if (wal != null) {
+            wal.close(5000);
+        }
+        cache.clear();
+        journals.clearHistory();
+    }
+
+    /**
+     * Rewrites the whole profile file, the format has no way to update single balances.
+     * The new content is written aside and moved over the file, so a crash leaves
+     * either the old or the new profile, never a truncated one.
+     */
+    private void writeProfile(PlayerProfile profile) throws IOException {
+        Map<String, Long> balances = profile.getMinorBalances();
+        Path file = profileFile(profile.getPlayerId()).toPath();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = ByteBuffer.wrap(codec.encodeBalances(balances));
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            if (wal != null) {
+                // A checkpoint deletes the logged changes once the profiles are written
+                channel.force(false);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        profile.markPersisted(balances);
+    }
+
+    /**
+     * Applies the changes logged by a previous run that never reached the profile
+     * files, writes them, and starts a new log.
+     */
+    private void recover() {
+        if (wal == null) {
+            return;
+        }
+
+        try {
+            Map<UUID, PlayerProfile> replayed = new HashMap<>();
+            int entries = wal.replay((playerId, currency, amount) -> {
+                PlayerProfile profile = replayed.get(playerId);
+                if (profile == null) {
+                    profile = readProfile(playerId);
+                    replayed.put(playerId, profile);
+                }
+                profile.setMinor(currency, amount);
+            });
+            for (PlayerProfile profile : replayed.values()) {
+                writeProfile(profile);
+            }
+            WriteAheadLog.syncFolder(dataFolder);
+            wal.deleteBefore(Long.MAX_VALUE);
+
+            if (entries > 0) {
+                plugin.getLogger().info("Recovered " + entries + " balance changes of " + replayed.size()
+                        + " players from the write-ahead log.");
+            }
+        } catch (IOException e) {
+            // The segments are left for the next start, this run only deletes the ones it creates
+            plugin.getLogger().log(Level.SEVERE, "Failed to replay the write-ahead log", e);
+        }
+
+        try {
+            wal.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the write-ahead log", e);
+        }
+    }
+
+    private File profileFile(UUID playerId) {
+        return new File(dataFolder, playerId.toString() + "." + codec.getName());
+    }
+
+    /**
+     * Rewrites profiles and journals stored with the other file format, e.g. after
+     * switching {@code storage.file-format} to json for debugging and back.
+     */
+    private void convertStoredData() {
+        StorageCodec other = StorageCodec.of(codec.getName().equals("json") ? "binary" : "json", plugin.getDataFolder());
+        try {
+            int profiles = CodecConverter.convertProfiles(dataFolder, other, codec);
+            int journals = CodecConverter.convertJournals(transactionsFolder, plugin.getDataFolder(), codec);
+            if (profiles > 0 || journals > 0) {
+                plugin.getLogger().info("Converted " + profiles + " profiles and " + journals
+                        + " transaction journals to " + codec.getName() + " format.");
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to convert stored data to " + codec.getName() + " format", e);
+        }
     }
 
     public void clearCache() {
+        saveAll();
         cache.clear();
-        transactionCache.clear();
+        journals.clearHistory();
     }
 }
\ No newline at end of file
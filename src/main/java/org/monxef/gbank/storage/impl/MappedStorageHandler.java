@@ -0,0 +1,310 @@
+package org.monxef.gbank.storage.impl;
+
+import org.bukkit.Bukkit;
+import org.monxef.gbank.GBank;
+import org.monxef.gbank.objects.PlayerProfile;
+import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.AbstractStorageHandler;
+import org.monxef.gbank.storage.AccountLocks;
+import org.monxef.gbank.storage.StorageExecutor;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.codec.CodecConverter;
+import org.monxef.gbank.storage.codec.StorageCodec;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+import org.monxef.gbank.storage.journal.JournalStore;
+import org.monxef.gbank.storage.mapped.ProfileSegments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+/**
+ * Stores every profile as a fixed-size record in a handful of memory-mapped
+ * segment files instead of one JSON file per player.
+ */
+public class MappedStorageHandler extends AbstractStorageHandler {
+    private final GBank plugin;
+    private final ProfileSegments segments;
+    private final File transactionsFolder;
+    private final StorageCodec codec;
+    private final JournalStore journals;
+
+    public MappedStorageHandler(GBank plugin, StorageExecutor executor) {
+        super(executor);
+        this.plugin = plugin;
+
+        int recordsPerSegment = plugin.getConfig().getInt("storage.mapped.records-per-segment", 65536);
+        try {
+            this.segments = new ProfileSegments(new File(plugin.getDataFolder(), "profiles"), recordsPerSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open profile segments", e);
+        }
+        this.transactionsFolder = new File(plugin.getDataFolder(), "transactions");
+        this.codec = StorageCodec.of(plugin.getConfig().getString("storage.file-format", "binary"), plugin.getDataFolder());
+        this.journals = new JournalStore(transactionsFolder, codec,
+                plugin.getConfig().getInt("storage.history-cache.size", 20),
+                plugin.getConfig().getLong("storage.history-cache.max-transactions", 50000),
+                plugin.getConfig().getLong("storage.history-cache.max-indexed-records", 1000000),
+                playerId -> Bukkit.getPlayer(playerId) != null);
+    }
+
+    @Override
+    public void start() {
+        try {
+            CodecConverter.convertJournals(transactionsFolder, plugin.getDataFolder(), codec);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to convert transaction journals to " + codec.getName() + " format", e);
+        }
+
+        // Only as the main backend: as the history backend, playerdata may belong to the live json backend
+        File legacyFolder = new File(plugin.getDataFolder(), "playerdata");
+        if (plugin.getConfig().getString("storage.type", "json").equalsIgnoreCase("mapped") && legacyFolder.isDirectory()) {
+            importLegacyProfiles(legacyFolder);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
+        return loadOnce(playerId, () -> supplyAsync(() -> {
+            Map<String, Long> balances;
+            try {
+                synchronized (segments) {
+                    balances = segments.read(playerId);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return Optional.empty();
+            }
+
+            return Optional.of(balances != null ? new PlayerProfile(playerId, balances) : new PlayerProfile(playerId));
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
+        Map<String, Long> changes = profile.getChanges();
+        if (changes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return written(runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(profile.getPlayerId())) {
+                // Only the changed currencies replace the stored ones
+                Map<String, Long> balances = balances(profile.getPlayerId());
+                balances.putAll(changes);
+                write(profile.getPlayerId(), balances);
+                profile.markPersisted(changes);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }), profile.getPlayerId());
+    }
+
+    @Override
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        return written(runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                Map<String, Long> balances = balances(playerId);
+                balances.merge(currency, amount, Long::sum);
+                write(playerId, balances);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        return written(runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                Map<String, Long> balances = balances(playerId);
+                balances.put(currency, Math.max(0, amount));
+                write(playerId, balances);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        return written(supplyAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                Map<String, Long> balances = balances(playerId);
+                if (balances.getOrDefault(currency, 0L) < amount) {
+                    return false;
+                }
+                balances.merge(currency, -amount, Long::sum);
+                write(playerId, balances);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        return written(supplyAsync(() -> {
+            try (AccountLocks.Held held = lockAccounts(from, to)) {
+                Map<String, Long> source = balances(from);
+                if (source.getOrDefault(currency, 0L) < debit) {
+                    return false;
+                }
+                Map<String, Long> original = new HashMap<>(source);
+                Map<String, Long> target = from.equals(to) ? source : balances(to);
+
+                source.merge(currency, -debit, Long::sum);
+                target.merge(currency, credit, Long::sum);
+                write(from, source);
+                try {
+                    write(to, target);
+                } catch (IOException e) {
+                    write(from, original);
+                    throw e;
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), from, to);
+    }
+
+    /**
+     * Reads a stored record. Callers hold the account lock, the segments monitor
+     * only guards the shared index and mappings for the duration of the copy.
+     */
+    private Map<String, Long> balances(UUID playerId) throws IOException {
+        Map<String, Long> balances;
+        synchronized (segments) {
+            balances = segments.read(playerId);
+        }
+        return balances != null ? balances : new HashMap<>();
+    }
+
+    private void write(UUID playerId, Map<String, Long> balances) throws IOException {
+        synchronized (segments) {
+            segments.write(playerId, balances);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
+        return runAsync(() -> {
+            try {
+                journals.append(playerId, currency, transaction);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        return supplyAsync(() -> {
+            try {
+                return journals.query(query);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return supplyAsync(() -> {
+            try {
+                return journals.trim(policy, after, accounts);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
+        return supplyAsync(() -> {
+            try {
+                return journals.readLatest(playerId, currency, limit);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new ArrayList<>();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        synchronized (segments) {
+            segments.force();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = super.getStatistics();
+        statistics.put("profiles", segments.size());
+        statistics.put("transaction-cache", journals.getHistoryStats());
+        return statistics;
+    }
+
+    @Override
+    protected void shutdown() {
+        journals.clearHistory();
+    }
+
+    /**
+     * One-shot import of the {@code playerdata/<uuid>.<format>} files written by the JSON
+     * backend, when mapped is the configured {@code storage.type}. The folder is renamed
+     * afterwards so the import never runs twice.
+     */
+    private void importLegacyProfiles(File legacyFolder) {
+        File[] files = legacyFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Map<String, StorageCodec> codecs = new HashMap<>();
+        for (String format : List.of("json", "binary")) {
+            StorageCodec fileCodec = StorageCodec.of(format, plugin.getDataFolder());
+            codecs.put(fileCodec.getName(), fileCodec);
+        }
+        int imported = 0;
+
+        for (File file : files) {
+            String name = file.getName();
+            int extension = name.lastIndexOf('.');
+            StorageCodec fileCodec = extension > 0 ? codecs.get(name.substring(extension + 1)) : null;
+            if (fileCodec == null) {
+                continue;
+            }
+
+            try {
+                UUID playerId = UUID.fromString(name.substring(0, extension));
+                Map<String, Long> balances = fileCodec.decodeBalances(Files.readAllBytes(file.toPath()));
+
+                synchronized (segments) {
+                    segments.write(playerId, balances);
+                }
+                imported++;
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not import legacy profile " + name, e);
+            }
+        }
+
+        flush();
+        File target = new File(plugin.getDataFolder(), "playerdata.imported");
+        if (!legacyFolder.renameTo(target)) {
+            plugin.getLogger().warning("Could not rename " + legacyFolder.getName() + ", it will be imported again on next start!");
+        }
+        plugin.getLogger().info("Imported " + imported + " profiles into mapped storage.");
+    }
+}
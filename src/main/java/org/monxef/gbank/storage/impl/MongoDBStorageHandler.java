@@ -1,85 +1,363 @@
 package org.monxef.gbank.storage.impl;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.objects.Transaction;
-import org.monxef.gbank.enums.TransactionType;
-import org.monxef.gbank.storage.StorageHandler;
+import org.monxef.gbank.storage.AbstractStorageHandler;
+import org.monxef.gbank.storage.AccountLocks;
+import org.monxef.gbank.storage.StorageExecutor;
+import org.monxef.gbank.storage.batch.BatchWriter;
+import org.monxef.gbank.storage.batch.PartialBatchException;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.cache.KnownAccounts;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
-public class MongoDBStorageHandler implements StorageHandler {
+public class MongoDBStorageHandler extends AbstractStorageHandler {
     private final MongoClient mongoClient;
     private final MongoDatabase database;
     private final MongoCollection<Document> profiles;
     private final MongoCollection<Document> transactions;
+    private final BatchWriter<ProfileWrite> profileWriter;
+    private final BatchWriter<Document> transactionWriter;
+    // Latest save queued for the next bulk write, served to loads until it is written
+    private final Map<UUID, PendingSave> pendingProfiles = new ConcurrentHashMap<>();
+    private final KnownAccounts accounts;
 
-    public MongoDBStorageHandler(String uri) {
+    public MongoDBStorageHandler(StorageExecutor executor, String uri, BatchWriter.Settings batch, KnownAccounts accounts) {
+        super(executor);
+        this.accounts = accounts;
         this.mongoClient = MongoClients.create(uri);
         this.database = mongoClient.getDatabase("gbank");
         this.profiles = database.getCollection("profiles");
         this.transactions = database.getCollection("transactions");
 
         profiles.createIndex(new Document("uuid", 1));
-        transactions.createIndex(new Document("playerId", 1).append("currency", 1).append("timestamp", -1));
+        transactions.createIndex(MongoTransactions.HISTORY_INDEX);
+
+        this.profileWriter = new BatchWriter<>("mongodb-profiles", this::writeProfiles, batch);
+        this.transactionWriter = new BatchWriter<>("mongodb-transactions", this::insertTransactions, batch);
+    }
+
+    @Override
+    public void start() {
+        refreshAccounts(accounts, this::scanAccounts);
     }
 
     @Override
     public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
-        return CompletableFuture.supplyAsync(() -> {
+        if (accounts.isMissing(playerId)) {
+            return CompletableFuture.completedFuture(Optional.of(new PlayerProfile(playerId)));
+        }
+        refreshAccounts(accounts, this::scanAccounts);
+
+        return loadOnce(playerId, () -> supplyAsync(() -> {
+            long version = accounts.version(playerId);
+            PendingSave pending = pendingProfiles.get(playerId);
+            if (pending != null) {
+                return Optional.of(new PlayerProfile(playerId, pending.balances()));
+            }
+
             Document query = new Document("uuid", playerId.toString());
             Document doc = profiles.find(query).first();
 
             if (doc == null) {
+                accounts.missing(playerId, version);
                 return Optional.of(new PlayerProfile(playerId));
             }
 
-            PlayerProfile profile = new PlayerProfile(playerId);
-            Document balances = doc.get("balances", Document.class);
+            return Optional.of(new PlayerProfile(playerId, balances(doc)));
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
+        Map<String, Long> changes = profile.getChanges();
+        if (changes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            balances.forEach((currency, value) ->
-                    profile.setBalance(currency, ((Number) value).doubleValue()));
+        PendingSave pending = new PendingSave(profile.getMinorBalances(), new CompletableFuture<>());
+        accounts.add(profile.getPlayerId());
+        pendingProfiles.put(profile.getPlayerId(), pending);
 
-            return Optional.of(profile);
-        });
+        CompletableFuture<Void> write = enqueue(profileWriter, new ProfileWrite(profile.getPlayerId(), changes))
+                .whenComplete((result, error) -> {
+                    pendingProfiles.remove(profile.getPlayerId(), pending);
+                    pending.written().complete(null);
+                    if (error == null) {
+                        profile.markPersisted(changes);
+                    }
+                });
+        return written(write, profile.getPlayerId());
+    }
+
+    /**
+     * Sends queued profile saves as one unordered bulk write that only sets the
+     * changed {@code balances.<currency>} fields. Saves of the same player in a
+     * batch are merged, the latest value of each currency wins.
+     */
+    private void writeProfiles(List<ProfileWrite> batch) throws PartialBatchException {
+        Map<UUID, Integer> operations = new HashMap<>();
+        List<UpdateOneModel<Document>> models = new ArrayList<>();
+        int[] operationOfItem = new int[batch.size()];
+
+        List<Document> sets = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            ProfileWrite write = batch.get(i);
+            Integer operation = operations.get(write.playerId());
+            if (operation == null) {
+                operation = sets.size();
+                operations.put(write.playerId(), operation);
+                sets.add(new Document("uuid", write.playerId().toString()));
+            }
+
+            Document set = sets.get(operation);
+            write.changes().forEach((currency, amount) -> set.append("balances." + currency, decimal(currency, amount)));
+            operationOfItem[i] = operation;
+        }
+
+        for (Document set : sets) {
+            models.add(new UpdateOneModel<>(
+                    Filters.eq("uuid", set.getString("uuid")),
+                    new Document("$set", set),
+                    new UpdateOptions().upsert(true)));
+        }
+
+        try {
+            profiles.bulkWrite(models, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            throw partialFailure(e, operationOfItem);
+        }
+    }
+
+    private void insertTransactions(List<Document> batch) throws PartialBatchException {
+        try {
+            transactions.insertMany(batch, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            int[] operationOfItem = new int[batch.size()];
+            Arrays.setAll(operationOfItem, i -> i);
+            throw partialFailure(e, operationOfItem);
+        }
+    }
+
+    /**
+     * Maps the per-operation errors of an unordered bulk write back to the batch
+     * items. A write concern error leaves every item unconfirmed, so it fails the
+     * whole batch instead.
+     */
+    private static PartialBatchException partialFailure(MongoBulkWriteException e, int[] operationOfItem) {
+        if (e.getWriteConcernError() != null) {
+            throw e;
+        }
+
+        Map<Integer, Exception> failedOperations = new HashMap<>();
+        for (BulkWriteError error : e.getWriteErrors()) {
+            failedOperations.put(error.getIndex(), new MongoException(error.getCode(), error.getMessage()));
+        }
+
+        Map<Integer, Exception> failures = new HashMap<>();
+        for (int i = 0; i < operationOfItem.length; i++) {
+            Exception failure = failedOperations.get(operationOfItem[i]);
+            if (failure != null) {
+                failures.put(i, failure);
+            }
+        }
+        return new PartialBatchException(failures);
     }
 
     @Override
-    public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
-        return CompletableFuture.runAsync(() -> {
-            Document query = new Document("uuid", profile.getPlayerId().toString());
-            Document update = new Document("$set", new Document()
-                    .append("uuid", profile.getPlayerId().toString())
-                    .append("balances", new Document(profile.getBalances())));
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        accounts.add(playerId);
+        return written(pendingSave(playerId).thenCompose(saved -> runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                increment(playerId, currency, amount);
+            }
+        })), playerId);
+    }
 
-            profiles.updateOne(query, update, new com.mongodb.client.model.UpdateOptions().upsert(true));
-        });
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        accounts.add(playerId);
+        return written(pendingSave(playerId).thenCompose(saved -> runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                profiles.updateOne(Filters.eq("uuid", playerId.toString()),
+                        Updates.set("balances." + currency, decimal(currency, Math.max(0, amount))),
+                        new UpdateOptions().upsert(true));
+            }
+        })), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        return written(pendingSave(playerId).thenCompose(saved -> supplyAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                return decrementIfSufficient(playerId, currency, amount);
+            }
+        })), playerId);
+    }
+
+    /**
+     * Conditional debit followed by an upserting credit. Standalone servers have no
+     * multi-document transactions, so a failed credit is undone by crediting the
+     * source back. Both accounts stay locked until then, so this server never acts
+     * on the debited but not yet credited state.
+     */
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        accounts.add(to);
+        CompletableFuture<Void> saved = CompletableFuture.allOf(pendingSave(from), pendingSave(to));
+        return written(saved.thenCompose(ready -> supplyAsync(() -> {
+            try (AccountLocks.Held held = lockAccounts(from, to)) {
+                if (!decrementIfSufficient(from, currency, debit)) {
+                    return false;
+                }
+
+                try {
+                    increment(to, currency, credit);
+                } catch (RuntimeException e) {
+                    increment(from, currency, debit);
+                    throw e;
+                }
+                return true;
+            }
+        })), from, to);
+    }
+
+    /**
+     * Reads the {@code balances} sub-document of a profile document.
+     */
+    static Map<String, Long> balances(Document doc) {
+        Map<String, Long> balances = new HashMap<>();
+        Document stored = doc.get("balances", Document.class);
+        if (stored != null) {
+            stored.forEach((currency, value) ->
+                    balances.put(currency, Money.of(MongoTransactions.decimal(value), Money.scale(currency))));
+        }
+        return balances;
+    }
+
+    /**
+     * Balances are stored as Decimal128 so the server adds and compares them exactly.
+     */
+    static Decimal128 decimal(String currency, long amount) {
+        return new Decimal128(Money.toDecimal(amount, Money.scale(currency)));
+    }
+
+    /**
+     * Streams the id of every stored profile for the known-account filter.
+     */
+    private void scanAccounts(Consumer<UUID> sink) {
+        for (Document doc : profiles.find().projection(new Document("uuid", 1).append("_id", 0)).batchSize(10000)) {
+            sink.accept(UUID.fromString(doc.getString("uuid")));
+        }
+    }
+
+    /**
+     * A queued profile save would overwrite an increment applied before it, so
+     * balance operations start once the player's latest queued save is written.
+     * Saves are written in queue order, so earlier saves are written by then too.
+     * Waited for before taking the account lock, and only for that player.
+     *
+     * @return CompletableFuture completed once the save is written or failed
+     */
+    private CompletableFuture<Void> pendingSave(UUID playerId) {
+        PendingSave pending = pendingProfiles.get(playerId);
+        return pending != null ? pending.written() : CompletableFuture.completedFuture(null);
+    }
+
+    private void increment(UUID playerId, String currency, long amount) {
+        profiles.updateOne(Filters.eq("uuid", playerId.toString()),
+                Updates.inc("balances." + currency, decimal(currency, amount)),
+                new UpdateOptions().upsert(true));
+    }
+
+    private boolean decrementIfSufficient(UUID playerId, String currency, long amount) {
+        return profiles.updateOne(
+                Filters.and(Filters.eq("uuid", playerId.toString()),
+                        Filters.gte("balances." + currency, decimal(currency, amount))),
+                Updates.inc("balances." + currency, decimal(currency, -amount))).getModifiedCount() == 1;
     }
 
     @Override
     public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
-        return CompletableFuture.runAsync(() -> {
-            Document doc = new Document()
-                    .append("playerId", playerId.toString())
-                    .append("currency", currency)
-                    .append("type", transaction.getType().toString())
-                    .append("amount", transaction.getAmount())
-                    .append("description", transaction.getDetails())
-                    .append("timestamp", transaction.getTimestamp());
+        return enqueue(transactionWriter, MongoTransactions.toDocument(playerId, currency, transaction));
+    }
+
+    @Override
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        int limit = Math.max(1, query.getLimit());
+        return supplyAsync(() -> MongoTransactions.page(transactions.find(MongoTransactions.filter(query))
+                .sort(MongoTransactions.HISTORY_SORT)
+                .limit(limit + 1)
+                .into(new ArrayList<>()), limit));
+    }
 
-            transactions.insertOne(doc);
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return supplyAsync(() -> {
+            long ageCutoff = policy.ageCutoff(System.currentTimeMillis());
+            HistoryKey cursor = after;
+            int visited = 0;
+            long removed = 0;
+
+            while (visited < Math.max(1, accounts)) {
+                Document next = transactions.find(MongoTransactions.accountsAfter(cursor))
+                        .sort(MongoTransactions.ACCOUNT_SORT)
+                        .projection(MongoTransactions.ACCOUNT_PROJECTION)
+                        .first();
+                if (next == null) {
+                    return new RetentionProgress(visited, removed, null);
+                }
+
+                HistoryKey account = MongoTransactions.toAccount(next);
+                Document lastKept = policy.maxPerAccount() > 0
+                        ? transactions.find(MongoTransactions.account(account))
+                                .sort(MongoTransactions.HISTORY_SORT)
+                                .skip(policy.maxPerAccount() - 1)
+                                .projection(MongoTransactions.CUTOFF_PROJECTION)
+                                .first()
+                        : null;
+
+                Bson expired = MongoTransactions.expired(account, lastKept, ageCutoff);
+                if (expired != null) {
+                    removed += transactions.deleteMany(expired).getDeletedCount();
+                }
+                cursor = account;
+                visited++;
+            }
+            return new RetentionProgress(visited, removed, cursor);
         });
     }
 
     @Override
     public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             Document query = new Document()
                     .append("playerId", playerId.toString())
                     .append("currency", currency);
@@ -88,22 +366,42 @@ public class MongoDBStorageHandler implements StorageHandler {
             transactions.find(query)
                     .sort(Sorts.descending("timestamp"))
                     .limit(limit)
-                    .forEach(doc -> {
-                        Transaction transaction = new Transaction(
-                            TransactionType.valueOf(doc.getString("type")),
-                            doc.getDouble("amount"),
-                            doc.getString("description")
-                        );
-                        result.add(transaction);
-                    });
+                    .forEach(doc -> result.add(MongoTransactions.toTransaction(doc)));
 
             return result;
         });
     }
 
-    public void close() {
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.allOf(profileWriter.flush(), transactionWriter.flush());
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = super.getStatistics();
+        statistics.put("profile-batches", profileWriter.stats());
+        statistics.put("transaction-batches", transactionWriter.stats());
+        statistics.put("account-filter", accounts.stats());
+        return statistics;
+    }
+
+    @Override
+    protected void shutdown() {
+        profileWriter.close(5000);
+        transactionWriter.close(5000);
         if (mongoClient != null) {
             mongoClient.close();
         }
     }
-}
\ No newline at end of file
+
+    private record ProfileWrite(UUID playerId, Map<String, Long> changes) {
+    }
+
+    /**
+     * @param balances The saved balances, served to loads meanwhile
+     * @param written Completed once the save is written, whatever its outcome
+     */
+    private record PendingSave(Map<String, Long> balances, CompletableFuture<Void> written) {
+    }
+}
@@ -0,0 +1,167 @@
+package org.monxef.gbank.storage.impl;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.monxef.gbank.enums.TransactionType;
+import org.monxef.gbank.objects.Money;
+import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.history.TransactionCursor;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Transaction history queries shared by the sync and reactive MongoDB handlers.
+ */
+final class MongoTransactions {
+    /**
+     * Compound index walked by history pages, {@code _id} breaks timestamp ties
+     */
+    static final Document HISTORY_INDEX = new Document("playerId", 1)
+            .append("currency", 1)
+            .append("timestamp", -1)
+            .append("_id", -1);
+    static final Bson HISTORY_SORT = Sorts.descending("timestamp", "_id");
+    // Histories are walked in the order of the HISTORY_INDEX prefix
+    static final Bson ACCOUNT_SORT = Sorts.ascending("playerId", "currency");
+    static final Bson ACCOUNT_PROJECTION = Projections.include("playerId", "currency");
+    static final Bson CUTOFF_PROJECTION = Projections.include("timestamp");
+
+    private MongoTransactions() {
+    }
+
+    /**
+     * Builds the filter of a page. The cursor becomes a range condition on the
+     * index, so no documents of previous pages are skipped over.
+     */
+    static Bson filter(TransactionQuery query) {
+        List<Bson> filters = new ArrayList<>();
+        filters.add(Filters.eq("playerId", query.getPlayerId().toString()));
+        filters.add(Filters.eq("currency", query.getCurrency()));
+
+        if (query.getTypes() != null && !query.getTypes().isEmpty()) {
+            filters.add(Filters.in("type", query.getTypes().stream().map(Enum::name).toList()));
+        }
+        if (query.getFrom() != null) {
+            filters.add(Filters.gte("timestamp", query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            filters.add(Filters.lt("timestamp", query.getTo()));
+        }
+
+        TransactionCursor after = query.getAfter();
+        if (after != null) {
+            if (!ObjectId.isValid(after.id())) {
+                throw new IllegalArgumentException("Invalid cursor: " + after);
+            }
+            filters.add(Filters.or(
+                    Filters.lt("timestamp", after.timestamp()),
+                    Filters.and(Filters.eq("timestamp", after.timestamp()), Filters.lt("_id", new ObjectId(after.id())))));
+        }
+        return Filters.and(filters);
+    }
+
+    /**
+     * Matches the documents of the histories following {@code after}, sorted with
+     * {@link #ACCOUNT_SORT} the first one is a single seek on the index.
+     */
+    static Bson accountsAfter(HistoryKey after) {
+        if (after == null) {
+            return new Document();
+        }
+        return Filters.or(
+                Filters.gt("playerId", after.playerId().toString()),
+                Filters.and(Filters.eq("playerId", after.playerId().toString()), Filters.gt("currency", after.currency())));
+    }
+
+    static Bson account(HistoryKey account) {
+        return Filters.and(Filters.eq("playerId", account.playerId().toString()), Filters.eq("currency", account.currency()));
+    }
+
+    static HistoryKey toAccount(Document doc) {
+        return new HistoryKey(UUID.fromString(doc.getString("playerId")), doc.getString("currency"));
+    }
+
+    /**
+     * @param lastKept Oldest document within the count limit, or null if the history is within it
+     * @param ageCutoff Timestamp below which documents expire, {@link Long#MIN_VALUE} without age limit
+     * @return The filter of the documents to remove, or null if there are none
+     */
+    static Bson expired(HistoryKey account, Document lastKept, long ageCutoff) {
+        List<Bson> conditions = new ArrayList<>(2);
+        if (ageCutoff != Long.MIN_VALUE) {
+            conditions.add(Filters.lt("timestamp", ageCutoff));
+        }
+        if (lastKept != null) {
+            long timestamp = lastKept.getLong("timestamp");
+            conditions.add(Filters.lt("timestamp", timestamp));
+            conditions.add(Filters.and(Filters.eq("timestamp", timestamp), Filters.lt("_id", lastKept.getObjectId("_id"))));
+        }
+        return conditions.isEmpty() ? null : Filters.and(account(account), Filters.or(conditions));
+    }
+
+    /**
+     * Builds a page from up to {@code limit + 1} documents, the extra one only
+     * tells whether another page exists.
+     */
+    static TransactionPage page(List<Document> documents, int limit) {
+        List<Transaction> transactions = new ArrayList<>(Math.min(limit, documents.size()));
+        for (int i = 0; i < documents.size() && i < limit; i++) {
+            transactions.add(toTransaction(documents.get(i)));
+        }
+
+        TransactionCursor next = null;
+        if (documents.size() > limit) {
+            Document last = documents.get(limit - 1);
+            next = new TransactionCursor(last.getLong("timestamp"), last.getObjectId("_id").toHexString());
+        }
+        return new TransactionPage(transactions, next);
+    }
+
+    /**
+     * Reads a history document. Documents written before amounts were stored as
+     * decimals hold a double and no scale, they take the currency's decimals.
+     */
+    static Transaction toTransaction(Document doc) {
+        Integer scale = doc.getInteger("scale");
+        int decimals = scale != null ? scale : Money.scale(doc.getString("currency"));
+        return new Transaction(
+                TransactionType.valueOf(doc.getString("type")),
+                Money.of(decimal(doc.get("amount")), decimals),
+                decimals,
+                doc.getLong("timestamp"),
+                doc.getString("description")
+        );
+    }
+
+    static Document toDocument(UUID playerId, String currency, Transaction transaction) {
+        return new Document()
+                .append("playerId", playerId.toString())
+                .append("currency", currency)
+                .append("type", transaction.getType().toString())
+                .append("amount", new Decimal128(transaction.toDecimal()))
+                .append("scale", transaction.getScale())
+                .append("description", transaction.getDetails())
+                .append("timestamp", transaction.getTimestamp());
+    }
+
+    /**
+     * @return A stored amount as a decimal, whether it was written as a Decimal128 or a double
+     */
+    static BigDecimal decimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return BigDecimal.valueOf(((Number) value).doubleValue());
+    }
+}
@@ -1,24 +1,68 @@
 package org.monxef.gbank.storage.impl;
 
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.objects.PlayerProfile;
 import org.monxef.gbank.objects.Transaction;
 import org.monxef.gbank.enums.TransactionType;
-import org.monxef.gbank.storage.StorageHandler;
-
+import org.monxef.gbank.storage.AbstractStorageHandler;
+import org.monxef.gbank.storage.AccountLocks;
+import org.monxef.gbank.storage.StorageExecutor;
+import org.monxef.gbank.storage.batch.BatchWriter;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.cache.KnownAccounts;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionCursor;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-public class MySQLStorageHandler implements StorageHandler {
-    private final com.zaxxer.hikari.HikariDataSource dataSource;
+public class MySQLStorageHandler extends AbstractStorageHandler {
+    // Rows removed per DELETE, each chunk commits on its own so locks are held briefly
+    private static final int DELETE_CHUNK = 1000;
+
+    private static final String UPSERT_PROFILE = "INSERT INTO profiles (uuid, last_updated) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE last_updated = VALUES(last_updated)";
+    private static final String CREDIT_BALANCE = "INSERT INTO balances (uuid, currency, amount) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount)";
+    private static final String DEBIT_BALANCE = "UPDATE balances SET amount = amount - ? " +
+            "WHERE uuid = ? AND currency = ? AND amount >= ?";
 
-    public MySQLStorageHandler(String host, int port, String database,
-                               String username, String password, boolean useSsl) {
+    private final com.zaxxer.hikari.HikariDataSource dataSource;
+    private final BatchWriter<LoggedTransaction> transactionWriter;
+    private final KnownAccounts accounts;
+    private final Logger logger;
+    private final boolean migrateAmountColumns;
+    // Narrow tables widened in the background once started
+    private final List<String> pendingMigrations = new ArrayList<>();
+
+    /**
+     * @param migrateAmountColumns Whether amount columns created with two decimals are altered to hold four
+     */
+    public MySQLStorageHandler(StorageExecutor executor, String host, int port, String database,
+                               String username, String password, boolean useSsl,
+                               BatchWriter.Settings transactionBatch, KnownAccounts accounts,
+                               boolean migrateAmountColumns, Logger logger) {
+        super(executor);
+        this.accounts = accounts;
+        this.logger = logger;
+        this.migrateAmountColumns = migrateAmountColumns;
         com.zaxxer.hikari.HikariConfig config = new com.zaxxer.hikari.HikariConfig();
 
         String jdbcUrl = String.format("jdbc:mysql://%s:%d/%s", host, port, database);
@@ -30,6 +74,8 @@ public class MySQLStorageHandler implements StorageHandler {
         config.setUsername(username);
         config.setPassword(password);
         config.setMaximumPoolSize(10);
+        // Lets the driver send a batch of upserts as a single multi-row statement
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
 
         if (useSsl) {
             config.addDataSourceProperty("sslMode", "REQUIRED");
@@ -40,6 +86,7 @@ public class MySQLStorageHandler implements StorageHandler {
         this.dataSource = new com.zaxxer.hikari.HikariDataSource(config);
 
         initializeTables();
+        this.transactionWriter = new BatchWriter<>("mysql-transactions", this::insertTransactions, transactionBatch);
     }
     private void initializeTables() {
         String createProfilesTable = """
@@ -53,7 +100,7 @@ public class MySQLStorageHandler implements StorageHandler {
             CREATE TABLE IF NOT EXISTS balances (
                 uuid VARCHAR(36),
                 currency VARCHAR(32),
-                amount DECIMAL(20, 2),
+                amount DECIMAL(24, 4),
                 PRIMARY KEY (uuid, currency),
                 FOREIGN KEY (uuid) REFERENCES profiles(uuid) ON DELETE CASCADE
             )
@@ -65,7 +112,7 @@ public class MySQLStorageHandler implements StorageHandler {
                 player_id VARCHAR(36),
                 currency VARCHAR(32),
                 type VARCHAR(32),
-                amount DECIMAL(20, 2),
+                amount DECIMAL(24, 4),
                 details TEXT,
                 timestamp BIGINT,
                 INDEX idx_player_currency_time (player_id, currency, timestamp DESC),
@@ -78,72 +125,183 @@ public class MySQLStorageHandler implements StorageHandler {
             stmt.execute(createProfilesTable);
             stmt.execute(createBalancesTable);
             stmt.execute(createTransactionsTable);
+            widenAmountColumns(conn);
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize database", e);
         }
     }
 
+    /**
+     * Tables created with two decimals hold no currency with more decimals. With
+     * {@code storage.mysql.migrate-amount-columns} they are altered to hold every
+     * currency's decimals, keeping existing amounts exactly: balances right away,
+     * since every read depends on it, and transactions, which can be large and stay
+     * locked while altered, in the background once started. Otherwise a warning is
+     * logged and the columns are left as they are.
+     */
+    private void widenAmountColumns(Connection conn) throws SQLException {
+        List<String> narrow = narrowAmountColumns(conn);
+        if (narrow.isEmpty()) {
+            return;
+        }
+        if (!migrateAmountColumns) {
+            logger.warning("The amount column of " + String.join(", ", narrow) + " holds less than "
+                    + Money.MAX_SCALE + " decimals, amounts of currencies with more decimals are rounded. "
+                    + "Set storage.mysql.migrate-amount-columns to true to widen it.");
+            return;
+        }
+
+        if (narrow.remove("balances")) {
+            widenAmountColumn(conn, "balances");
+        }
+        pendingMigrations.addAll(narrow);
+    }
+
+    private List<String> narrowAmountColumns(Connection conn) throws SQLException {
+        List<String> narrow = new ArrayList<>();
+        try (var stmt = conn.prepareStatement("""
+                SELECT TABLE_NAME FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND COLUMN_NAME = 'amount'
+                AND TABLE_NAME IN ('balances', 'transactions') AND NUMERIC_SCALE < ?
+                """)) {
+            stmt.setInt(1, Money.MAX_SCALE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    narrow.add(rs.getString(1));
+                }
+            }
+        }
+
+        return narrow;
+    }
+
+    private void widenAmountColumn(Connection conn, String table) throws SQLException {
+        logger.warning("Altering " + table + ".amount to DECIMAL(24, " + Money.MAX_SCALE
+                + "), the table is locked until it is rebuilt.");
+        long start = System.currentTimeMillis();
+        try (var stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " MODIFY amount DECIMAL(24, " + Money.MAX_SCALE + ")");
+        }
+        logger.info("Altered " + table + ".amount in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    @Override
+    public void start() {
+        refreshAccounts(accounts, this::scanAccounts);
+
+        for (String table : pendingMigrations) {
+            runAsync(() -> {
+                try (var conn = dataSource.getConnection()) {
+                    widenAmountColumn(conn, table);
+                } catch (SQLException e) {
+                    logger.log(Level.SEVERE, "Failed to alter " + table + ".amount", e);
+                }
+            });
+        }
+        pendingMigrations.clear();
+    }
+
     @Override
     public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
-        return CompletableFuture.supplyAsync(() -> {
+        if (accounts.isMissing(playerId)) {
+            return CompletableFuture.completedFuture(Optional.of(new PlayerProfile(playerId)));
+        }
+        refreshAccounts(accounts, this::scanAccounts);
+
+        return loadOnce(playerId, () -> supplyAsync(() -> {
+            long version = accounts.version(playerId);
             try (var conn = dataSource.getConnection();
                  var stmt = conn.prepareStatement(
                          "SELECT currency, amount FROM balances WHERE uuid = ?")) {
 
                 stmt.setString(1, playerId.toString());
-                PlayerProfile profile = new PlayerProfile(playerId);
+                Map<String, Long> balances = new LinkedHashMap<>();
 
                 try (var rs = stmt.executeQuery()) {
                     while (rs.next()) {
                         String currency = rs.getString("currency");
-                        double amount = rs.getDouble("amount");
-                        profile.setBalance(currency, amount);
+                        balances.put(currency, Money.of(rs.getBigDecimal("amount"), Money.scale(currency)));
                     }
                 }
 
-                return Optional.of(profile);
+                if (balances.isEmpty()) {
+                    accounts.missing(playerId, version);
+                }
+                return Optional.of(new PlayerProfile(playerId, balances));
             } catch (Exception e) {
                 e.printStackTrace();
                 return Optional.empty();
             }
-        });
+        }));
     }
 
     @Override
     public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
-        return CompletableFuture.runAsync(() -> {
-            try (var conn = dataSource.getConnection()) {
-                conn.setAutoCommit(false);
+        accounts.add(profile.getPlayerId());
+        if (!profile.hasChanges()) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-                try {
-                    try (var stmt = conn.prepareStatement(
-                            "INSERT INTO profiles (uuid, last_updated) VALUES (?, ?) " +
-                                    "ON DUPLICATE KEY UPDATE last_updated = ?")) {
-
-                        long now = System.currentTimeMillis();
-                        stmt.setString(1, profile.getPlayerId().toString());
-                        stmt.setLong(2, now);
-                        stmt.setLong(3, now);
-                        stmt.executeUpdate();
-                    }
+        return written(runAsync(() -> {
+            // Held so changes are committed in the order they were taken
+            try (AccountLocks.Held held = lockAccount(profile.getPlayerId())) {
+                // Only the currencies changed since the last save are sent
+                Map<String, Long> changes = profile.getChanges();
+                if (!changes.isEmpty()) {
+                    writeBalances(profile.getPlayerId(), changes);
+                    profile.markPersisted(changes);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }), profile.getPlayerId());
+    }
 
-                    try (var stmt = conn.prepareStatement(
-                            "DELETE FROM balances WHERE uuid = ?")) {
-                        stmt.setString(1, profile.getPlayerId().toString());
-                        stmt.executeUpdate();
+    /**
+     * Upserts the given balances in one transaction: one statement for the profile
+     * row and one batch for the balances.
+     */
+    private void writeBalances(UUID playerId, Map<String, Long> balances) throws Exception {
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                upsertProfile(conn, playerId);
+
+                try (var stmt = conn.prepareStatement(
+                        "INSERT INTO balances (uuid, currency, amount) VALUES (?, ?, ?) " +
+                                "ON DUPLICATE KEY UPDATE amount = VALUES(amount)")) {
+
+                    for (Map.Entry<String, Long> entry : balances.entrySet()) {
+                        stmt.setString(1, playerId.toString());
+                        stmt.setString(2, entry.getKey());
+                        stmt.setBigDecimal(3, Money.toDecimal(entry.getValue(), Money.scale(entry.getKey())));
+                        stmt.addBatch();
                     }
+                    stmt.executeBatch();
+                }
 
-                    try (var stmt = conn.prepareStatement(
-                            "INSERT INTO balances (uuid, currency, amount) VALUES (?, ?, ?)")) {
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
 
-                        for (Map.Entry<String, Double> entry : profile.getBalances().entrySet()) {
-                            stmt.setString(1, profile.getPlayerId().toString());
-                            stmt.setString(2, entry.getKey());
-                            stmt.setDouble(3, entry.getValue());
-                            stmt.executeUpdate();
-                        }
-                    }
+    @Override
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        accounts.add(playerId);
+        return written(runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId);
+                 var conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
 
+                try {
+                    upsertProfile(conn, playerId);
+                    creditBalance(conn, playerId, currency, amount);
                     conn.commit();
                 } catch (Exception e) {
                     conn.rollback();
@@ -151,41 +309,333 @@ public class MySQLStorageHandler implements StorageHandler {
                 } finally {
                     conn.setAutoCommit(true);
                 }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to credit " + playerId, e);
+            }
+        }), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        accounts.add(playerId);
+        return written(runAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId)) {
+                writeBalances(playerId, Map.of(currency, Math.max(0, amount)));
             } catch (Exception e) {
-                e.printStackTrace();
+                throw new RuntimeException("Failed to set the balance of " + playerId, e);
             }
-        });
+        }), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        return written(supplyAsync(() -> {
+            try (AccountLocks.Held held = lockAccount(playerId);
+                 var conn = dataSource.getConnection()) {
+                return debitBalance(conn, playerId, currency, amount);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to debit " + playerId, e);
+            }
+        }), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        accounts.add(to);
+        return written(supplyAsync(() -> {
+            // Transfers sharing an account run one at a time, so they never deadlock on each other's rows
+            try (AccountLocks.Held held = lockAccounts(from, to);
+                 var conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+
+                try {
+                    if (!debitBalance(conn, from, currency, debit)) {
+                        conn.rollback();
+                        return false;
+                    }
+                    upsertProfile(conn, to);
+                    creditBalance(conn, to, currency, credit);
+                    conn.commit();
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to transfer from " + from + " to " + to, e);
+            }
+            return true;
+        }), from, to);
+    }
+
+    private void upsertProfile(Connection conn, UUID playerId) throws SQLException {
+        try (var stmt = conn.prepareStatement(UPSERT_PROFILE)) {
+            stmt.setString(1, playerId.toString());
+            stmt.setLong(2, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+    }
+
+    private void creditBalance(Connection conn, UUID playerId, String currency, long amount) throws SQLException {
+        try (var stmt = conn.prepareStatement(CREDIT_BALANCE)) {
+            stmt.setString(1, playerId.toString());
+            stmt.setString(2, currency);
+            stmt.setBigDecimal(3, Money.toDecimal(amount, Money.scale(currency)));
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Guarded decrement, the row is only touched when it holds enough.
+     *
+     * @return false if the balance was missing or too low
+     */
+    private boolean debitBalance(Connection conn, UUID playerId, String currency, long amount) throws SQLException {
+        try (var stmt = conn.prepareStatement(DEBIT_BALANCE)) {
+            BigDecimal decimal = Money.toDecimal(amount, Money.scale(currency));
+            stmt.setBigDecimal(1, decimal);
+            stmt.setString(2, playerId.toString());
+            stmt.setString(3, currency);
+            stmt.setBigDecimal(4, decimal);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Streams the id of every profile row for the known-account filter.
+     */
+    private void scanAccounts(Consumer<UUID> sink) throws SQLException {
+        try (var conn = dataSource.getConnection();
+             var stmt = conn.prepareStatement("SELECT uuid FROM profiles", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Makes the driver stream the rows instead of buffering the whole table
+            stmt.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(UUID.fromString(rs.getString("uuid")));
+                }
+            }
+        }
     }
 
     @Override
     public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
-        return CompletableFuture.runAsync(() -> {
-            String sql = """
-                INSERT INTO transactions 
-                (player_id, currency, type, amount, details, timestamp)
-                VALUES (?, ?, ?, ?, ?, ?)
-            """;
+        return enqueue(transactionWriter, new LoggedTransaction(playerId, currency, transaction));
+    }
 
-            try (var conn = dataSource.getConnection();
-                 var stmt = conn.prepareStatement(sql)) {
-                
-                stmt.setString(1, playerId.toString());
-                stmt.setString(2, currency);
-                stmt.setString(3, transaction.getType().toString());
-                stmt.setDouble(4, transaction.getAmount());
-                stmt.setString(5, transaction.getDetails());
-                stmt.setLong(6, transaction.getTimestamp());
+    /**
+     * Inserts a batch of queued transactions with a single connection and commit.
+     */
+    private void insertTransactions(List<LoggedTransaction> batch) throws Exception {
+        String sql = """
+            INSERT INTO transactions
+            (player_id, currency, type, amount, details, timestamp)
+            VALUES (?, ?, ?, ?, ?, ?)
+        """;
 
-                stmt.executeUpdate();
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (var stmt = conn.prepareStatement(sql)) {
+                for (LoggedTransaction logged : batch) {
+                    stmt.setString(1, logged.playerId().toString());
+                    stmt.setString(2, logged.currency());
+                    stmt.setString(3, logged.transaction().getType().toString());
+                    stmt.setBigDecimal(4, logged.transaction().toDecimal());
+                    stmt.setString(5, logged.transaction().getDetails());
+                    stmt.setLong(6, logged.transaction().getTimestamp());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
             } catch (Exception e) {
-                e.printStackTrace();
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        int limit = Math.max(1, query.getLimit());
+        return supplyAsync(() -> {
+            StringBuilder sql = new StringBuilder(
+                    "SELECT id, type, amount, details, timestamp FROM transactions WHERE player_id = ? AND currency = ?");
+            List<Object> parameters = new ArrayList<>(List.of(query.getPlayerId().toString(), query.getCurrency()));
+
+            if (query.getTypes() != null && !query.getTypes().isEmpty()) {
+                sql.append(" AND type IN (").append(String.join(", ", Collections.nCopies(query.getTypes().size(), "?"))).append(")");
+                query.getTypes().forEach(type -> parameters.add(type.name()));
+            }
+            if (query.getFrom() != null) {
+                sql.append(" AND timestamp >= ?");
+                parameters.add(query.getFrom());
+            }
+            if (query.getTo() != null) {
+                sql.append(" AND timestamp < ?");
+                parameters.add(query.getTo());
+            }
+
+            TransactionCursor after = query.getAfter();
+            if (after != null) {
+                long afterId;
+                try {
+                    afterId = Long.parseLong(after.id());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid cursor: " + after, e);
+                }
+                sql.append(" AND (timestamp < ? OR (timestamp = ? AND id > ?))");
+                parameters.add(after.timestamp());
+                parameters.add(after.timestamp());
+                parameters.add(afterId);
+            }
+
+            // Same order as idx_player_currency_time, whose entries end with the primary key,
+            // so a page is a range scan of the index however deep it is
+            sql.append(" ORDER BY timestamp DESC, id ASC LIMIT ?");
+            parameters.add(limit + 1);
+
+            List<Transaction> transactions = new ArrayList<>(limit);
+            TransactionCursor next = null;
+            try (var conn = dataSource.getConnection();
+                 var stmt = conn.prepareStatement(sql.toString())) {
+
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
+
+                long lastId = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (transactions.size() == limit) {
+                            Transaction last = transactions.get(limit - 1);
+                            next = new TransactionCursor(last.getTimestamp(), String.valueOf(lastId));
+                            break;
+                        }
+
+                        transactions.add(transaction(rs, Money.scale(query.getCurrency())));
+                        lastId = rs.getLong("id");
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to query transactions of " + query.getPlayerId(), e);
+            }
+
+            return new TransactionPage(transactions, next);
+        });
+    }
+
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return supplyAsync(() -> {
+            long ageCutoff = policy.ageCutoff(System.currentTimeMillis());
+            HistoryKey cursor = after;
+            int visited = 0;
+            long removed = 0;
+
+            try (var conn = dataSource.getConnection()) {
+                while (visited < Math.max(1, accounts)) {
+                    HistoryKey account = nextAccount(conn, cursor);
+                    if (account == null) {
+                        return new RetentionProgress(visited, removed, null);
+                    }
+
+                    removed += trimAccount(conn, account, policy, ageCutoff);
+                    cursor = account;
+                    visited++;
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to trim transactions", e);
             }
+            return new RetentionProgress(visited, removed, cursor);
         });
     }
 
+    /**
+     * Seeks the history following {@code after} on idx_player_currency_time, one
+     * index lookup per history instead of a scan of the table.
+     */
+    private HistoryKey nextAccount(Connection conn, HistoryKey after) throws SQLException {
+        String sql = after == null
+                ? "SELECT player_id, currency FROM transactions ORDER BY player_id, currency LIMIT 1"
+                : "SELECT player_id, currency FROM transactions WHERE player_id > ? OR (player_id = ? AND currency > ?) " +
+                        "ORDER BY player_id, currency LIMIT 1";
+
+        try (var stmt = conn.prepareStatement(sql)) {
+            if (after != null) {
+                stmt.setString(1, after.playerId().toString());
+                stmt.setString(2, after.playerId().toString());
+                stmt.setString(3, after.currency());
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new HistoryKey(UUID.fromString(rs.getString("player_id")), rs.getString("currency")) : null;
+            }
+        }
+    }
+
+    /**
+     * Deletes the rows of one history past the newest {@code maxPerAccount} or older
+     * than the age cutoff, in chunks.
+     */
+    private long trimAccount(Connection conn, HistoryKey account, RetentionPolicy policy, long ageCutoff) throws SQLException {
+        List<String> conditions = new ArrayList<>(2);
+        List<Object> parameters = new ArrayList<>(List.of(account.playerId().toString(), account.currency()));
+
+        if (ageCutoff != Long.MIN_VALUE) {
+            conditions.add("timestamp < ?");
+            parameters.add(ageCutoff);
+        }
+
+        if (policy.maxPerAccount() > 0) {
+            // Last row kept, in the history page order
+            try (var stmt = conn.prepareStatement("SELECT id, timestamp FROM transactions WHERE player_id = ? AND currency = ? " +
+                    "ORDER BY timestamp DESC, id ASC LIMIT 1 OFFSET ?")) {
+                stmt.setString(1, account.playerId().toString());
+                stmt.setString(2, account.currency());
+                stmt.setInt(3, policy.maxPerAccount() - 1);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        long timestamp = rs.getLong("timestamp");
+                        conditions.add("timestamp < ? OR (timestamp = ? AND id > ?)");
+                        parameters.add(timestamp);
+                        parameters.add(timestamp);
+                        parameters.add(rs.getLong("id"));
+                    }
+                }
+            }
+        }
+
+        if (conditions.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "DELETE FROM transactions WHERE player_id = ? AND currency = ? AND (" +
+                String.join(" OR ", conditions) + ") LIMIT ?";
+        parameters.add(DELETE_CHUNK);
+
+        long removed = 0;
+        try (var stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+
+            int deleted;
+            do {
+                deleted = stmt.executeUpdate();
+                removed += deleted;
+            } while (deleted == DELETE_CHUNK);
+        }
+        return removed;
+    }
+
     @Override
     public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             String sql = """
                 SELECT type, amount, details, timestamp
                 FROM transactions
@@ -205,12 +655,7 @@ public class MySQLStorageHandler implements StorageHandler {
 
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
-                        Transaction transaction = new Transaction(
-                            TransactionType.valueOf(rs.getString("type")),
-                            rs.getDouble("amount"),
-                            rs.getString("details")
-                        );
-                        transactions.add(transaction);
+                        transactions.add(transaction(rs, Money.scale(currency)));
                     }
                 }
             } catch (Exception e) {
@@ -221,7 +666,35 @@ public class MySQLStorageHandler implements StorageHandler {
         });
     }
 
-    public void close() {
+    @Override
+    public CompletableFuture<Void> flush() {
+        return transactionWriter.flush();
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = super.getStatistics();
+        statistics.put("transaction-batches", transactionWriter.stats());
+        statistics.put("account-filter", accounts.stats());
+        return statistics;
+    }
+
+    @Override
+    protected void shutdown() {
+        transactionWriter.close(5000);
         dataSource.close();
     }
+
+    private static Transaction transaction(ResultSet rs, int scale) throws SQLException {
+        return new Transaction(
+                TransactionType.valueOf(rs.getString("type")),
+                Money.of(rs.getBigDecimal("amount"), scale),
+                scale,
+                rs.getLong("timestamp"),
+                rs.getString("details")
+        );
+    }
+
+    private record LoggedTransaction(UUID playerId, String currency, Transaction transaction) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,227 @@
+package org.monxef.gbank.storage.impl;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.monxef.gbank.objects.PlayerProfile;
+import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.AbstractStorageHandler;
+import org.monxef.gbank.storage.StorageExecutor;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.monxef.gbank.storage.impl.MongoDBStorageHandler.decimal;
+import static org.monxef.gbank.storage.reactive.PublisherFutures.collect;
+import static org.monxef.gbank.storage.reactive.PublisherFutures.first;
+
+/**
+ * MongoDB backend on the reactive-streams driver. Futures are completed from the
+ * driver callbacks, so pending operations do not hold a thread each. Uses the
+ * same collections and document layout as {@link MongoDBStorageHandler}.
+ */
+public class ReactiveMongoDBStorageHandler extends AbstractStorageHandler {
+    private final MongoClient mongoClient;
+    private final MongoDatabase database;
+    private final MongoCollection<Document> profiles;
+    private final MongoCollection<Document> transactions;
+
+    public ReactiveMongoDBStorageHandler(StorageExecutor executor, String uri) {
+        super(executor);
+        this.mongoClient = MongoClients.create(uri);
+        this.database = mongoClient.getDatabase("gbank");
+        this.profiles = database.getCollection("profiles");
+        this.transactions = database.getCollection("transactions");
+
+        first(profiles.createIndex(new Document("uuid", 1)), new CompletableFuture<>()).join();
+        first(transactions.createIndex(MongoTransactions.HISTORY_INDEX), new CompletableFuture<>()).join();
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
+        return loadOnce(playerId, () -> first(profiles.find(Filters.eq("uuid", playerId.toString())).first(), this.<Document>newFuture())
+                .thenApply(doc -> Optional.of(doc != null
+                        ? new PlayerProfile(playerId, MongoDBStorageHandler.balances(doc))
+                        : new PlayerProfile(playerId))));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
+        Map<String, Long> changes = profile.getChanges();
+        if (changes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Only the changed currencies are set
+        Document set = new Document("uuid", profile.getPlayerId().toString());
+        changes.forEach((currency, amount) -> set.append("balances." + currency, decimal(currency, amount)));
+
+        return written(first(profiles.updateOne(Filters.eq("uuid", profile.getPlayerId().toString()),
+                new Document("$set", set), new UpdateOptions().upsert(true)), newFuture())
+                .thenApply(result -> {
+                    profile.markPersisted(changes);
+                    return (Void) null;
+                }), profile.getPlayerId());
+    }
+
+    @Override
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        return written(increment(playerId, currency, amount), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        return written(first(profiles.updateOne(Filters.eq("uuid", playerId.toString()),
+                Updates.set("balances." + currency, decimal(currency, Math.max(0, amount))),
+                new UpdateOptions().upsert(true)), newFuture())
+                .thenApply(result -> (Void) null), playerId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        return written(decrementIfSufficient(playerId, currency, amount), playerId);
+    }
+
+    /**
+     * Conditional debit followed by an upserting credit, the source is credited
+     * back if the second update fails.
+     */
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        return written(decrementIfSufficient(from, currency, debit).thenCompose(debited -> {
+            if (!debited) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            return increment(to, currency, credit)
+                    .thenApply(result -> true)
+                    .exceptionallyCompose(error -> increment(from, currency, debit)
+                            .thenCompose(result -> CompletableFuture.failedFuture(error)));
+        }), from, to);
+    }
+
+    private CompletableFuture<Void> increment(UUID playerId, String currency, long amount) {
+        return first(profiles.updateOne(Filters.eq("uuid", playerId.toString()),
+                Updates.inc("balances." + currency, decimal(currency, amount)),
+                new UpdateOptions().upsert(true)), newFuture())
+                .thenApply(result -> null);
+    }
+
+    private CompletableFuture<Boolean> decrementIfSufficient(UUID playerId, String currency, long amount) {
+        return first(profiles.updateOne(
+                Filters.and(Filters.eq("uuid", playerId.toString()),
+                        Filters.gte("balances." + currency, decimal(currency, amount))),
+                Updates.inc("balances." + currency, decimal(currency, -amount))), newFuture())
+                .thenApply(result -> result.getModifiedCount() == 1);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
+        return first(transactions.insertOne(MongoTransactions.toDocument(playerId, currency, transaction)), newFuture())
+                .thenApply(result -> null);
+    }
+
+    @Override
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        int limit = Math.max(1, query.getLimit());
+        Bson filter;
+        try {
+            filter = MongoTransactions.filter(query);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return collect(transactions.find(filter).sort(MongoTransactions.HISTORY_SORT).limit(limit + 1),
+                this.<List<Document>>newFuture())
+                .thenApply(docs -> MongoTransactions.page(docs, limit));
+    }
+
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return trimFrom(policy, policy.ageCutoff(System.currentTimeMillis()), after, Math.max(1, accounts), 0, 0);
+    }
+
+    /**
+     * Trims the history following {@code cursor}, then chains onto the next one
+     * from the driver callback until {@code remaining} histories were visited.
+     */
+    private CompletableFuture<RetentionProgress> trimFrom(RetentionPolicy policy, long ageCutoff, HistoryKey cursor,
+                                                         int remaining, int visited, long removed) {
+        if (remaining == 0) {
+            return CompletableFuture.completedFuture(new RetentionProgress(visited, removed, cursor));
+        }
+
+        return first(transactions.find(MongoTransactions.accountsAfter(cursor))
+                .sort(MongoTransactions.ACCOUNT_SORT)
+                .projection(MongoTransactions.ACCOUNT_PROJECTION)
+                .first(), this.<Document>newFuture())
+                .thenCompose(next -> {
+                    if (next == null) {
+                        return CompletableFuture.completedFuture(new RetentionProgress(visited, removed, null));
+                    }
+
+                    HistoryKey account = MongoTransactions.toAccount(next);
+                    return trimAccount(account, policy, ageCutoff).thenCompose(deleted ->
+                            trimFrom(policy, ageCutoff, account, remaining - 1, visited + 1, removed + deleted));
+                });
+    }
+
+    private CompletableFuture<Long> trimAccount(HistoryKey account, RetentionPolicy policy, long ageCutoff) {
+        CompletableFuture<Document> lastKept = policy.maxPerAccount() > 0
+                ? first(transactions.find(MongoTransactions.account(account))
+                        .sort(MongoTransactions.HISTORY_SORT)
+                        .skip(policy.maxPerAccount() - 1)
+                        .projection(MongoTransactions.CUTOFF_PROJECTION)
+                        .first(), newFuture())
+                : CompletableFuture.completedFuture(null);
+
+        return lastKept.thenCompose(last -> {
+            Bson expired = MongoTransactions.expired(account, last, ageCutoff);
+            if (expired == null) {
+                return CompletableFuture.completedFuture(0L);
+            }
+            return first(transactions.deleteMany(expired), newFuture())
+                    .thenApply(result -> result.getDeletedCount());
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
+        Document query = new Document()
+                .append("playerId", playerId.toString())
+                .append("currency", currency);
+
+        return collect(transactions.find(query).sort(Sorts.descending("timestamp")).limit(limit), this.<List<Document>>newFuture())
+                .thenApply(docs -> {
+                    List<Transaction> result = new ArrayList<>(docs.size());
+                    for (Document doc : docs) {
+                        result.add(MongoTransactions.toTransaction(doc));
+                    }
+                    return result;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected void shutdown() {
+        if (mongoClient != null) {
+            mongoClient.close();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package org.monxef.gbank.storage.journal;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.cache.BoundedCache;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.cache.TransactionRing;
+import org.monxef.gbank.storage.codec.JsonCodec;
+import org.monxef.gbank.storage.codec.StorageCodec;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionCursor;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Keeps one {@link TransactionJournal} per player and currency inside a folder.
+ * Legacy {@code <uuid>_<currency>.json} array files are imported into a journal
+ * the first time they are touched.
+ * <p>
+ * The latest transactions of each history are kept in a {@link TransactionRing},
+ * so recent history requests do not have to touch the journal file.
+ * <p>
+ * Open journals are kept in a {@link BoundedCache} weighed by the size of their
+ * offset index. A history is only touched under its lock stripe, so a journal
+ * evicted while in use is never open twice: the next request opens it again
+ * once the current one is done.
+ */
+public class JournalStore {
+    private final File folder;
+    private final StorageCodec codec;
+    private final BoundedCache<HistoryKey, TransactionJournal> journals;
+    private final Object[] locks = new Object[64];
+    private final BoundedCache<HistoryKey, TransactionRing> history;
+    private final int historySize;
+    // Histories of the running retention pass, sorted
+    private volatile List<HistoryKey> retentionAccounts;
+
+    /**
+     * @param historySize Transactions kept in memory per player and currency
+     * @param maxCachedTransactions Total ring capacity allowed before evicting
+     * @param maxIndexedRecords Total records of the open journals allowed before closing some
+     * @param pinned Players whose history is never evicted
+     */
+    public JournalStore(File folder, StorageCodec codec, int historySize, long maxCachedTransactions,
+                        long maxIndexedRecords, Predicate<UUID> pinned) {
+        this.folder = folder;
+        this.codec = codec;
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        this.journals = new BoundedCache<>(maxIndexedRecords, journal -> Math.max(1, journal.indexedRecords()),
+                key -> pinned.test(key.playerId()));
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.historySize = Math.max(1, historySize);
+        this.history = new BoundedCache<>(maxCachedTransactions, TransactionRing::capacity, key -> pinned.test(key.playerId()));
+    }
+
+    public void append(UUID playerId, String currency, Transaction transaction) throws IOException {
+        HistoryKey key = new HistoryKey(playerId, currency);
+        byte[] record = codec.encodeTransaction(transaction);
+
+        // Same lock as the ring seeding, so a ring being seeded cannot miss this append
+        synchronized (lock(key)) {
+            get(key).append(record);
+            TransactionRing ring = history.peek(key);
+            if (ring != null) {
+                ring.add(transaction);
+            }
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} transactions, newest first
+     */
+    public List<Transaction> readLatest(UUID playerId, String currency, int limit) throws IOException {
+        HistoryKey key = new HistoryKey(playerId, currency);
+        TransactionRing ring = history.get(key);
+        if (ring != null) {
+            List<Transaction> cached = ring.latest(limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        synchronized (lock(key)) {
+            TransactionJournal journal = get(key);
+            List<byte[]> records = journal.readLatest(Math.max(limit, historySize));
+            List<Transaction> transactions = new ArrayList<>(records.size());
+            for (byte[] record : records) {
+                transactions.add(codec.decodeTransaction(record));
+            }
+
+            if (ring == null) {
+                history.put(key, new TransactionRing(historySize, transactions, journal.size() <= historySize));
+            }
+            return transactions.size() > limit ? transactions.subList(0, limit) : transactions;
+        }
+    }
+
+    /**
+     * Reads one page of a history. The cursor id is the journal record number,
+     * which a retention trim does not change, and its timestamp is checked against
+     * the record so a cursor from a rewritten journal is not trusted blindly.
+     * Records are appended when the transaction happens, so they are in timestamp
+     * order and the time bounds are found by binary search rather than by walking
+     * the journal from its end.
+     */
+    public TransactionPage query(TransactionQuery query) throws IOException {
+        HistoryKey key = new HistoryKey(query.getPlayerId(), query.getCurrency());
+        synchronized (lock(key)) {
+            return query(get(key), query);
+        }
+    }
+
+    private TransactionPage query(TransactionJournal journal, TransactionQuery query) throws IOException {
+        long first = journal.firstNumber();
+        int before = journal.size();
+        if (query.getTo() != null) {
+            before = Math.min(before, seek(journal, query.getTo()));
+        }
+
+        TransactionCursor after = query.getAfter();
+        if (after != null) {
+            long number;
+            try {
+                number = Long.parseLong(after.id());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + after, e);
+            }
+
+            long index = number - first;
+            if (index < 0) {
+                // The cursor's record was trimmed, and everything older with it
+                before = 0;
+            } else if (index < before && timestampAt(journal, (int) index) == after.timestamp()) {
+                before = (int) index;
+            } else {
+                // Not the record the cursor was taken from, resume from its timestamp
+                before = Math.min(before, seek(journal, after.timestamp()));
+            }
+        }
+
+        int limit = Math.max(1, query.getLimit());
+        List<Transaction> transactions = new ArrayList<>(limit);
+        int[] lastIndex = {-1};
+        boolean[] more = {false};
+        journal.readBackwards(before, (index, payload) -> {
+            Transaction transaction = codec.decodeTransaction(payload);
+            if (query.getFrom() != null && transaction.getTimestamp() < query.getFrom()) {
+                // Everything older was appended earlier, nothing further back can match
+                return false;
+            }
+            if (!query.matches(transaction)) {
+                return true;
+            }
+            if (transactions.size() == limit) {
+                more[0] = true;
+                return false;
+            }
+
+            transactions.add(transaction);
+            lastIndex[0] = index;
+            return true;
+        });
+
+        TransactionCursor next = more[0]
+                ? new TransactionCursor(transactions.get(transactions.size() - 1).getTimestamp(),
+                        String.valueOf(first + lastIndex[0]))
+                : null;
+        return new TransactionPage(transactions, next);
+    }
+
+    /**
+     * @return Index of the first record whose timestamp is at or after {@code timestamp}
+     */
+    private int seek(TransactionJournal journal, long timestamp) throws IOException {
+        int low = 0;
+        int high = journal.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestampAt(journal, middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long timestampAt(TransactionJournal journal, int index) throws IOException {
+        return codec.decodeTransaction(journal.read(index)).getTimestamp();
+    }
+
+    /**
+     * Trims up to {@code limit} histories following {@code after}. The folder is
+     * listed once per pass, histories created meanwhile are visited by the next pass.
+     *
+     * @param after Last history trimmed by the previous step, or null to start a new pass
+     */
+    public RetentionProgress trim(RetentionPolicy policy, HistoryKey after, int limit) throws IOException {
+        List<HistoryKey> accounts = retentionAccounts;
+        if (after == null || accounts == null) {
+            accounts = listAccounts();
+            retentionAccounts = accounts;
+        }
+
+        int start = 0;
+        if (after != null) {
+            int index = Collections.binarySearch(accounts, after);
+            start = index >= 0 ? index + 1 : -(index + 1);
+        }
+
+        long ageCutoff = policy.ageCutoff(System.currentTimeMillis());
+        int end = Math.min(accounts.size(), start + Math.max(1, limit));
+        long removed = 0;
+        for (int i = start; i < end; i++) {
+            removed += trim(accounts.get(i), policy, ageCutoff);
+        }
+
+        if (end == accounts.size()) {
+            retentionAccounts = null;
+            return new RetentionProgress(end - start, removed, null);
+        }
+        return new RetentionProgress(end - start, removed, accounts.get(end - 1));
+    }
+
+    private int trim(HistoryKey key, RetentionPolicy policy, long ageCutoff) throws IOException {
+        synchronized (lock(key)) {
+            // A pass visits every history, only the open ones are kept open
+            TransactionJournal cached = journals.peek(key);
+            TransactionJournal journal = cached != null ? cached : open(key);
+            int size = journal.size();
+            int[] expired = {policy.maxPerAccount() > 0 ? Math.max(0, size - policy.maxPerAccount()) : 0};
+
+            if (ageCutoff != Long.MIN_VALUE) {
+                // Records are appended in time order, so the expired ones are all at the start
+                journal.readBackwards(size, (index, payload) -> {
+                    if (index < expired[0]) {
+                        return false;
+                    }
+                    if (codec.decodeTransaction(payload).getTimestamp() < ageCutoff) {
+                        expired[0] = index + 1;
+                        return false;
+                    }
+                    return true;
+                });
+            }
+
+            if (expired[0] == 0) {
+                return 0;
+            }
+            journal.removeOldest(expired[0]);
+            history.remove(key);
+            if (cached != null) {
+                // Re-weighed with its smaller index
+                journals.put(key, cached);
+            }
+            return expired[0];
+        }
+    }
+
+    private List<HistoryKey> listAccounts() {
+        TreeSet<HistoryKey> accounts = new TreeSet<>();
+        String[] names = folder.list();
+        if (names != null) {
+            for (String name : names) {
+                int dot = name.lastIndexOf('.');
+                if (dot < 0 || !(name.endsWith(".journal") || name.endsWith(".json"))) {
+                    continue;
+                }
+
+                HistoryKey key = HistoryKey.fromFileName(name.substring(0, dot));
+                if (key != null) {
+                    accounts.add(key);
+                }
+            }
+        }
+        return new ArrayList<>(accounts);
+    }
+
+    public BoundedCache.CacheStats getHistoryStats() {
+        return history.stats();
+    }
+
+    public void clearHistory() {
+        history.clear();
+    }
+
+    /**
+     * @return The open journal of the history. Called holding its {@link #lock(HistoryKey) lock}.
+     */
+    private TransactionJournal get(HistoryKey key) throws IOException {
+        TransactionJournal journal = journals.get(key);
+        if (journal == null) {
+            journal = open(key);
+            journals.put(key, journal);
+        }
+        return journal;
+    }
+
+    /**
+     * Opens and indexes a journal without caching it. Called holding its lock.
+     */
+    private TransactionJournal open(HistoryKey key) throws IOException {
+        String name = key.fileName();
+        TransactionJournal journal = new TransactionJournal(new File(folder, name + ".journal"));
+        importLegacy(new File(folder, name + ".json"), journal);
+        journal.size();
+        return journal;
+    }
+
+    private Object lock(HistoryKey key) {
+        return locks[(key.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private void importLegacy(File legacyFile, TransactionJournal journal) throws IOException {
+        if (!legacyFile.exists() || journal.getFile().exists()) {
+            return;
+        }
+
+        // Amounts were doubles back then, so the records are read like old json records
+        List<Transaction> transactions = new ArrayList<>();
+        try (FileReader reader = new FileReader(legacyFile)) {
+            JsonElement root = JsonParser.parseReader(reader);
+            if (root.isJsonArray()) {
+                for (JsonElement element : root.getAsJsonArray()) {
+                    transactions.add(JsonCodec.decodeTransaction(element.getAsJsonObject()));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Could not read legacy transaction file " + legacyFile.getName(), e);
+        }
+
+        try {
+            for (Transaction transaction : transactions) {
+                journal.append(codec.encodeTransaction(transaction));
+            }
+        } catch (IOException e) {
+            journal.getFile().delete();
+            throw e;
+        }
+
+        if (!legacyFile.renameTo(new File(folder, legacyFile.getName() + ".migrated"))) {
+            throw new IOException("Could not retire legacy transaction file " + legacyFile.getName());
+        }
+    }
+}
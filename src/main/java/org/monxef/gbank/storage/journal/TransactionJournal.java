@@ -0,0 +1,292 @@
+package org.monxef.gbank.storage.journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only, length-prefixed record file.
+ * <p>
+ * Layout: a 12 byte header, the magic and the number of the first record,
+ * followed by records of the form {@code [int length][payload]}. The offset of
+ * every record is kept in memory so appends never re-read the file and the
+ * newest records can be read directly from the end.
+ * <p>
+ * Records are numbered in append order, and {@link #removeOldest(int) dropping}
+ * the oldest ones does not renumber the others, so a record number stays valid
+ * for as long as the record exists. Journals written before the numbering have
+ * a 4 byte header and start at 0.
+ */
+public class TransactionJournal {
+    private static final int MAGIC = 0x47424A32; // "GBJ2"
+    private static final int LEGACY_MAGIC = 0x47424A31; // "GBJ1"
+    private static final int HEADER_SIZE = 12;
+    private static final int LEGACY_HEADER_SIZE = 4;
+
+    private final File file;
+    private long[] offsets = new long[16];
+    private int count;
+    private long end;
+    private long first;
+    private boolean indexed;
+
+    public TransactionJournal(File file) {
+        this(file, 0);
+    }
+
+    /**
+     * @param first Number of the first record, if the journal does not exist yet
+     */
+    public TransactionJournal(File file, long first) {
+        this.file = file;
+        this.first = first;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends a single record to the end of the journal.
+     *
+     * @param payload The encoded record
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void append(byte[] payload) throws IOException {
+        ensureIndexed();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (end == 0) {
+                raf.writeInt(MAGIC);
+                raf.writeLong(first);
+                end = HEADER_SIZE;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(4 + payload.length);
+            record.putInt(payload.length).put(payload);
+
+            raf.seek(end);
+            raf.write(record.array());
+            addOffset(end);
+            end += record.capacity();
+        }
+    }
+
+    /**
+     * Reads the newest records of the journal.
+     *
+     * @param limit The maximum number of records to read
+     * @return The payloads, newest first
+     * @throws IOException if the journal could not be read
+     */
+    public synchronized List<byte[]> readLatest(int limit) throws IOException {
+        ensureIndexed();
+
+        int from = Math.max(0, count - limit);
+        List<byte[]> records = new ArrayList<>(count - from);
+        if (count == 0) {
+            return records;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int i = count - 1; i >= from; i--) {
+                records.add(readAt(raf, offsets[i]));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads a single record through the offset index.
+     *
+     * @param index Position of the record in the journal
+     * @throws IOException if the journal could not be read
+     */
+    public synchronized byte[] read(int index) throws IOException {
+        ensureIndexed();
+
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readAt(raf, offsets[index]);
+        }
+    }
+
+    /**
+     * Visits records from newest to oldest, starting right before the given index.
+     * Each record is located through the offset index, so starting deep in the
+     * journal costs the same as starting at its end.
+     *
+     * @param before Index of the first record not to visit, or {@link Integer#MAX_VALUE} for the end
+     * @param visitor Called for each record until it returns false
+     * @throws IOException if the journal could not be read
+     */
+    public synchronized void readBackwards(int before, RecordVisitor visitor) throws IOException {
+        ensureIndexed();
+
+        int start = Math.min(before, count) - 1;
+        if (start < 0) {
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int i = start; i >= 0; i--) {
+                if (!visitor.visit(i, readAt(raf, offsets[i]))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest records. The remaining ones are copied into a new file that
+     * then replaces the journal, so a crash leaves either the old or the new file.
+     * Indexes of the remaining records shift down by the number removed, their
+     * numbers stay the same.
+     *
+     * @param records Number of records to drop from the start of the journal
+     * @throws IOException if the journal could not be rewritten
+     */
+    public synchronized void removeOldest(int records) throws IOException {
+        ensureIndexed();
+
+        int removed = Math.min(records, count);
+        if (removed <= 0) {
+            return;
+        }
+
+        long start = removed < count ? offsets[removed] : end;
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel source = new RandomAccessFile(file, "r").getChannel();
+             FileChannel target = new FileOutputStream(temp).getChannel()) {
+            target.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(first + removed).flip());
+            for (long position = start; position < end; ) {
+                position += source.transferTo(position, end - position, target);
+            }
+            target.force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long shift = start - HEADER_SIZE;
+        first += removed;
+        int kept = count - removed;
+        long[] remaining = new long[Math.max(16, kept)];
+        for (int i = 0; i < kept; i++) {
+            remaining[i] = offsets[removed + i] - shift;
+        }
+        offsets = remaining;
+        count = kept;
+        end -= shift;
+    }
+
+    /**
+     * @return The number of record offsets held in memory, without indexing the journal
+     */
+    public synchronized int indexedRecords() {
+        return count;
+    }
+
+    /**
+     * @return The number of the record at index 0, which grows as the oldest records are dropped
+     * @throws IOException if the journal could not be indexed
+     */
+    public synchronized long firstNumber() throws IOException {
+        ensureIndexed();
+        return first;
+    }
+
+    /**
+     * @return The number of records in the journal
+     * @throws IOException if the journal could not be indexed
+     */
+    public synchronized int size() throws IOException {
+        ensureIndexed();
+        return count;
+    }
+
+    private byte[] readAt(RandomAccessFile raf, long offset) throws IOException {
+        raf.seek(offset);
+        byte[] payload = new byte[raf.readInt()];
+        raf.readFully(payload);
+        return payload;
+    }
+
+    private void addOffset(long offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = offset;
+    }
+
+    /**
+     * Builds the offset index by walking the record headers once. A record that
+     * was only partially written (e.g. the server crashed mid-append) is cut off.
+     */
+    private void ensureIndexed() throws IOException {
+        if (indexed) {
+            return;
+        }
+
+        count = 0;
+        end = 0;
+        if (file.exists() && file.length() > 0) {
+            long length = file.length();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                int magic = length >= LEGACY_HEADER_SIZE ? in.readInt() : 0;
+                long position;
+                if (magic == MAGIC && length >= HEADER_SIZE) {
+                    first = in.readLong();
+                    position = HEADER_SIZE;
+                } else if (magic == LEGACY_MAGIC) {
+                    first = 0;
+                    position = LEGACY_HEADER_SIZE;
+                } else {
+                    throw new IOException("Not a transaction journal: " + file.getName());
+                }
+
+                while (position + 4 <= length) {
+                    int size = in.readInt();
+                    if (size < 0 || position + 4 + size > length) {
+                        break;
+                    }
+                    addOffset(position);
+                    in.skipNBytes(size);
+                    position += 4 + size;
+                }
+                end = position;
+            } catch (EOFException e) {
+                throw new IOException("Corrupted transaction journal: " + file.getName(), e);
+            }
+
+            if (end < length) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(end);
+                }
+            }
+        }
+        indexed = true;
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @param index Position of the record in the journal, its number minus {@link #firstNumber()}
+         * @param payload The encoded record
+         * @return false to stop reading
+         */
+        boolean visit(int index, byte[] payload) throws IOException;
+    }
+}
@@ -0,0 +1,429 @@
+package org.monxef.gbank.storage.journal;
+
+import org.monxef.gbank.storage.batch.BatchWriter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Log of balance changes written before they are acknowledged, so changes only
+ * held in memory by a write-behind backend survive a crash.
+ * <p>
+ * Each entry holds the new value of the changed balances, not the difference,
+ * so replaying an entry whose change already reached the profile files is
+ * harmless. Entries are queued and written by a {@link BatchWriter}, and each
+ * batch is fsynced once, so concurrent changes share the cost of a sync (group
+ * commit). An entry's future completes once it is on disk.
+ * <p>
+ * An entry is {@link #prepare(Map) prepared} while the change is made, which
+ * numbers it, and {@link #append(Entry) appended} afterwards, so entries can
+ * reach the log out of order. Replay therefore keeps, for each balance, the
+ * value of the highest numbered entry.
+ * <p>
+ * The log is split in numbered segment files. A checkpoint {@link #begin()
+ * rolls} to a new segment, writes every profile, and then {@link
+ * #complete(Checkpoint) records} the last entry number the profiles cover and
+ * deletes the older segments, which keeps replay short. Entries numbered up to
+ * the recorded one are skipped on replay, they may be older than the files.
+ * <p>
+ * Layout of a segment: a 4 byte magic header followed by records of the form
+ * {@code [int length][int crc32][payload]}. A torn record at the end of the last
+ * segment was never acknowledged and is ignored.
+ */
+public class WriteAheadLog {
+    private static final int MAGIC = 0x47425732; // "GBW2"
+    private static final int HEADER_SIZE = 4;
+    private static final String EXTENSION = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final File folder;
+    private final BatchWriter.Settings settings;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile BatchWriter<byte[]> writer;
+    private FileChannel channel;
+    private long segment;
+    // First segment of this run, older ones are only deleted once replayed
+    private volatile long firstSegment;
+
+    /**
+     * @param folder Folder holding the segment files
+     * @param settings Queue and group commit limits
+     */
+    public WriteAheadLog(File folder, BatchWriter.Settings settings) {
+        this.folder = folder;
+        this.settings = settings;
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+    }
+
+    /**
+     * Reads the entries left by a previous run that the profile files may not
+     * cover, and passes the latest logged value of each balance to the sink.
+     * Call before {@link #open()}.
+     *
+     * @return The number of entries replayed
+     * @throws IOException if a segment could not be read, the sink is then not called
+     */
+    public int replay(BalanceSink sink) throws IOException {
+        long covered = readCheckpoint();
+        sequence.accumulateAndGet(covered, Math::max);
+
+        Map<UUID, Map<String, long[]>> latest = new HashMap<>();
+        IOException failure = null;
+        int entries = 0;
+        for (long id : segments()) {
+            try {
+                entries += replay(segmentFile(id), covered, latest);
+            } catch (IOException e) {
+                // Keep reading, the entry numbers of the other segments are still needed
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        for (Map.Entry<UUID, Map<String, long[]>> player : latest.entrySet()) {
+            for (Map.Entry<String, long[]> balance : player.getValue().entrySet()) {
+                sink.accept(player.getKey(), balance.getKey(), balance.getValue()[1]);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Starts a new segment after the existing ones and starts accepting entries.
+     */
+    public synchronized void open() throws IOException {
+        sequence.accumulateAndGet(readCheckpoint(), Math::max);
+        List<Long> existing = segments();
+        segment = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        firstSegment = segment;
+        channel = openSegment(segment);
+        writer = new BatchWriter<>("wal", this::write, settings);
+    }
+
+    /**
+     * Numbers an entry with the new balances of one or more players. Must be
+     * called under the players' locks, right after the change, so the numbers
+     * follow the order of the changes. Players of the same entry, e.g. both sides
+     * of a transfer, are always replayed together.
+     *
+     * @param balances The new balances in minor units, by player and currency
+     */
+    public Entry prepare(Map<UUID, Map<String, Long>> balances) {
+        return new Entry(encode(sequence.incrementAndGet(), balances));
+    }
+
+    /**
+     * Queues a prepared entry. May block while the queue is full, so call it after
+     * releasing the players' locks.
+     *
+     * @return CompletableFuture completed once the entry is synced to disk
+     * @throws IllegalStateException if the log is not open
+     */
+    public CompletableFuture<Void> append(Entry entry) {
+        BatchWriter<byte[]> current = writer;
+        if (current == null) {
+            throw new IllegalStateException("Write-ahead log is not open");
+        }
+        return current.submit(entry.payload());
+    }
+
+    /**
+     * Starts a checkpoint by switching appends to a new segment. Every entry
+     * prepared so far is numbered up to the checkpoint's sequence, and every
+     * entry written so far is in a segment numbered below the checkpoint's one.
+     */
+    public synchronized Checkpoint begin() throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Write-ahead log is not open");
+        }
+        channel.force(false);
+        channel.close();
+        channel = openSegment(++segment);
+        syncFolder(folder);
+        return new Checkpoint(segment, sequence.get());
+    }
+
+    /**
+     * Completes a checkpoint once every profile changed before {@link #begin()}
+     * is written and synced: records its sequence and deletes the segments it
+     * covers. Nothing is recorded or deleted while segments left by a previous
+     * run that could not be replayed remain, a later replay still needs every
+     * entry of this run to order them.
+     */
+    public void complete(Checkpoint checkpoint) throws IOException {
+        List<Long> existing = segments();
+        if (!existing.isEmpty() && existing.get(0) < firstSegment) {
+            return;
+        }
+
+        Path file = new File(folder, CHECKPOINT_FILE).toPath();
+        Path temp = file.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel marker = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            marker.write(ByteBuffer.allocate(Long.BYTES).putLong(checkpoint.sequence()).flip());
+            marker.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncFolder(folder);
+        deleteBefore(checkpoint.segment());
+    }
+
+    /**
+     * Deletes the segments numbered below {@code segment}, once the changes they
+     * hold are written to the profile files. After {@link #open()}, segments left
+     * by a previous run are kept, they were not replayed.
+     */
+    public void deleteBefore(long segment) {
+        boolean deleted = false;
+        for (long id : segments()) {
+            if (id >= firstSegment && id < segment) {
+                deleted |= segmentFile(id).delete();
+            }
+        }
+        if (deleted) {
+            syncFolder(folder);
+        }
+    }
+
+    public BatchWriter.BatchStats stats() {
+        BatchWriter<byte[]> current = writer;
+        return current != null ? current.stats() : new BatchWriter.BatchStats(0, 0, 0, 0);
+    }
+
+    /**
+     * Writes the queued entries and closes the current segment.
+     */
+    public void close(long timeoutMillis) {
+        if (writer == null) {
+            return;
+        }
+        // Not under the log lock, the writer thread needs it to finish its batches
+        writer.close(timeoutMillis);
+        synchronized (this) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Syncs a folder so the files created, moved or deleted in it survive a crash.
+     * Not every platform can open a folder, there it is left to the file system.
+     */
+    public static void syncFolder(File folder) {
+        try (FileChannel directory = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private synchronized void write(List<byte[]> entries) throws IOException {
+        int size = 0;
+        for (byte[] entry : entries) {
+            size += 8 + entry.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] entry : entries) {
+            crc.reset();
+            crc.update(entry);
+            buffer.putInt(entry.length).putInt((int) crc.getValue()).put(entry);
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        // One sync for the whole batch
+        channel.force(false);
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentFile(id).toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentChannel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).flip());
+        syncFolder(folder);
+        return segmentChannel;
+    }
+
+    /**
+     * Reads one segment, keeping in {@code latest} the number and value of the
+     * highest numbered entry of each balance.
+     */
+    private int replay(File file, long covered, Map<UUID, Map<String, long[]>> latest) throws IOException {
+        int entries = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (file.length() < HEADER_SIZE) {
+                // Crashed right after creating the segment
+                return 0;
+            }
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a write-ahead log segment: " + file.getName());
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] entry;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > file.length()) {
+                        break;
+                    }
+                    entry = new byte[length];
+                    in.readFully(entry);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(entry);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (decode(entry, covered, latest)) {
+                    entries++;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] encode(long sequence, Map<UUID, Map<String, Long>> balances) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(sequence);
+            out.writeShort(balances.size());
+            for (Map.Entry<UUID, Map<String, Long>> player : balances.entrySet()) {
+                out.writeLong(player.getKey().getMostSignificantBits());
+                out.writeLong(player.getKey().getLeastSignificantBits());
+                out.writeShort(player.getValue().size());
+                for (Map.Entry<String, Long> balance : player.getValue().entrySet()) {
+                    out.writeUTF(balance.getKey());
+                    out.writeLong(balance.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return Whether the entry is newer than the last checkpoint
+     */
+    private boolean decode(byte[] entry, long covered, Map<UUID, Map<String, long[]>> latest) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            long number = in.readLong();
+            sequence.accumulateAndGet(number, Math::max);
+            if (number <= covered) {
+                return false;
+            }
+
+            int players = in.readUnsignedShort();
+            for (int i = 0; i < players; i++) {
+                UUID playerId = new UUID(in.readLong(), in.readLong());
+                Map<String, long[]> balances = latest.computeIfAbsent(playerId, id -> new HashMap<>());
+                int count = in.readUnsignedShort();
+                for (int j = 0; j < count; j++) {
+                    String currency = in.readUTF();
+                    long amount = in.readLong();
+                    long[] current = balances.get(currency);
+                    if (current == null || current[0] < number) {
+                        balances.put(currency, new long[]{number, amount});
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        File file = new File(folder, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readLong();
+        }
+    }
+
+    /**
+     * @return The numbers of the segment files, ascending
+     */
+    private List<Long> segments() {
+        List<Long> ids = new ArrayList<>();
+        String[] names = folder.list();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.endsWith(EXTENSION)) {
+                    continue;
+                }
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - EXTENSION.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private File segmentFile(long id) {
+        return new File(folder, String.format("%016d", id) + EXTENSION);
+    }
+
+    /**
+     * A numbered entry waiting to be appended.
+     */
+    public record Entry(byte[] payload) {
+    }
+
+    /**
+     * @param segment The segment appends switched to, older ones are covered
+     * @param sequence The number of the last entry prepared before the switch
+     */
+    public record Checkpoint(long segment, long sequence) {
+    }
+
+    @FunctionalInterface
+    public interface BalanceSink {
+        /**
+         * @param amount The balance after the change, in minor units
+         */
+        void accept(UUID playerId, String currency, long amount) throws IOException;
+    }
+}
@@ -0,0 +1,289 @@
+package org.monxef.gbank.storage.ledger;
+
+import org.monxef.gbank.objects.PlayerProfile;
+import org.monxef.gbank.objects.Transaction;
+import org.monxef.gbank.storage.StorageHandler;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+import org.monxef.gbank.storage.history.RetentionProgress;
+import org.monxef.gbank.storage.history.TransactionPage;
+import org.monxef.gbank.storage.history.TransactionQuery;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Front of the storage through which every balance mutation goes. Credits,
+ * debits, balance sets and transfers are applied to each account one at a time,
+ * in the order they were submitted: a command is chained after the previous
+ * command of every account it touches, and handed to the backend once those
+ * finished. Mutations of one account therefore never race each other, whichever
+ * thread submitted them, while other accounts keep going and the backend's
+ * batching and group commit see every account's commands at once. No thread
+ * waits for the backend.
+ * <p>
+ * Accounts are spread over shards, each holding the last command of its accounts
+ * and a bounded number of pending commands. A transfer is chained on both
+ * accounts, taking their shards lowest first like {@link
+ * org.monxef.gbank.storage.AccountLocks}, so two transfers crossing the same
+ * accounts in opposite directions are ordered one after the other.
+ * <p>
+ * Reads, profile saves and transaction logs are passed straight through.
+ */
+public class LedgerEngine implements StorageHandler {
+    private final StorageHandler delegate;
+    private final Shard[] shards;
+    private final long offerTimeoutNanos;
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate The backend applying the commands and persisting them
+     * @param settings Shard count and pending command limits
+     */
+    public LedgerEngine(StorageHandler delegate, Settings settings) {
+        this.delegate = delegate;
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.offerTimeoutMillis());
+        this.shards = new Shard[Math.max(1, settings.shards())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, Math.max(1, settings.capacity()));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> credit(UUID playerId, String currency, long amount) {
+        return submit(playerId, playerId, handler -> handler.credit(playerId, currency, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> debit(UUID playerId, String currency, long amount) {
+        return submit(playerId, playerId, handler -> handler.debit(playerId, currency, amount));
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID playerId, String currency, long amount) {
+        return submit(playerId, playerId, handler -> handler.setBalance(playerId, currency, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, String currency, long debit, long credit) {
+        return submit(from, to, handler -> handler.transfer(from, to, currency, debit, credit));
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerProfile>> loadProfile(UUID playerId) {
+        return delegate.loadProfile(playerId);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProfile(PlayerProfile profile) {
+        return delegate.saveProfile(profile);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveTransaction(UUID playerId, String currency, Transaction transaction) {
+        return delegate.saveTransaction(playerId, currency, transaction);
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getTransactions(UUID playerId, String currency, int limit) {
+        return delegate.getTransactions(playerId, currency, limit);
+    }
+
+    @Override
+    public CompletableFuture<TransactionPage> getTransactions(TransactionQuery query) {
+        return delegate.getTransactions(query);
+    }
+
+    @Override
+    public CompletableFuture<RetentionProgress> trimTransactions(RetentionPolicy policy, HistoryKey after, int accounts) {
+        return delegate.trimTransactions(policy, after, accounts);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>(delegate.getStatistics());
+        statistics.put("ledger", stats());
+        return statistics;
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    /**
+     * Waits for the commands submitted so far, then flushes the backend.
+     */
+    @Override
+    public CompletableFuture<Void> flush() {
+        return pending().thenCompose(result -> delegate.flush());
+    }
+
+    @Override
+    public boolean close(Duration timeout) {
+        running = false;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        boolean drained = true;
+        try {
+            pending().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            drained = false;
+        } catch (ExecutionException e) {
+            // Commands never fail their chain, nothing is left pending
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        return delegate.close(Duration.ofNanos(remaining)) && drained;
+    }
+
+    public LedgerStats stats() {
+        int pending = 0;
+        for (Shard shard : shards) {
+            pending += shard.capacity - shard.room.availablePermits();
+        }
+        return new LedgerStats(shards.length, pending, applied.sum(), rejected.sum());
+    }
+
+    /**
+     * Chains a command after the previous commands of both accounts, which are the
+     * same account for everything but transfers.
+     */
+    private <T> CompletableFuture<T> submit(UUID first, UUID second,
+                                            Function<StorageHandler, CompletableFuture<T>> operation) {
+        Shard a = shard(first);
+        Shard b = shard(second);
+        Shard low = a.index <= b.index ? a : b;
+        Shard high = a.index <= b.index ? b : a;
+
+        if (!running) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Ledger is closed"));
+        }
+        if (!low.reserve()) {
+            return reject();
+        }
+        if (high != low && !high.reserve()) {
+            low.room.release();
+            return reject();
+        }
+
+        // Completed once the command is done, whatever its outcome, so the chain never breaks
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous;
+        synchronized (low) {
+            synchronized (high) {
+                CompletableFuture<Void> before = a.link(first, done);
+                previous = first.equals(second) ? before : CompletableFuture.allOf(before, b.link(second, done));
+            }
+        }
+
+        CompletableFuture<T> result = previous.thenCompose(ready -> operation.apply(delegate));
+        result.whenComplete((value, error) -> {
+            done.complete(null);
+            a.unlink(first, done);
+            b.unlink(second, done);
+            low.room.release();
+            if (high != low) {
+                high.room.release();
+            }
+            applied.increment();
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> reject() {
+        rejected.increment();
+        return CompletableFuture.failedFuture(new RejectedExecutionException("Ledger is full"));
+    }
+
+    /**
+     * @return CompletableFuture completed once every command submitted so far is done
+     */
+    private CompletableFuture<Void> pending() {
+        List<CompletableFuture<Void>> tails = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                tails.addAll(shard.tails.values());
+            }
+        }
+        return CompletableFuture.allOf(tails.toArray(new CompletableFuture[0]));
+    }
+
+    private Shard shard(UUID playerId) {
+        return shards[(playerId.hashCode() & 0x7fffffff) % shards.length];
+    }
+
+    private final class Shard {
+        private final int index;
+        private final int capacity;
+        private final Semaphore room;
+        // Last command of each account with one pending, guarded by the shard
+        private final Map<UUID, CompletableFuture<Void>> tails = new HashMap<>();
+
+        Shard(int index, int capacity) {
+            this.index = index;
+            this.capacity = capacity;
+            this.room = new Semaphore(capacity);
+        }
+
+        /**
+         * Takes room for one command, waiting up to the offer timeout while the shard is full.
+         */
+        boolean reserve() {
+            try {
+                return room.tryAcquire(offerTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Makes {@code done} the last command of the account. Called holding the shard.
+         *
+         * @return The command it has to wait for
+         */
+        CompletableFuture<Void> link(UUID playerId, CompletableFuture<Void> done) {
+            CompletableFuture<Void> previous = tails.put(playerId, done);
+            return previous != null ? previous : CompletableFuture.completedFuture(null);
+        }
+
+        synchronized void unlink(UUID playerId, CompletableFuture<Void> done) {
+            tails.remove(playerId, done);
+        }
+    }
+
+    /**
+     * @param shards Number of shards accounts are spread over
+     * @param capacity Maximum number of pending commands per shard
+     * @param offerTimeoutMillis How long a submission waits while its shard is full
+     */
+    public record Settings(int shards, int capacity, long offerTimeoutMillis) {
+    }
+
+    public record LedgerStats(int shards, int pending, long applied, long rejected) {
+
+        @Override
+        public String toString() {
+            return String.format("shards=%d pending=%d applied=%d rejected=%d", shards, pending, applied, rejected);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.monxef.gbank.storage.mapped;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Open-addressing UUID to record number table stored in a direct buffer, so a
+ * few hundred thousand accounts do not turn into as many heap objects.
+ * <p>
+ * Each entry is {@code [long msb][long lsb][long record + 1]}, an entry with a
+ * value of 0 is empty. Not thread safe, callers synchronize.
+ */
+public class OffHeapIndex {
+    private static final int ENTRY_SIZE = 24;
+
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+
+    public OffHeapIndex(int expectedSize) {
+        allocate(tableSizeFor(Math.max(16, expectedSize * 2)));
+    }
+
+    /**
+     * @return The record number for the UUID, or -1 if it is not indexed
+     */
+    public long get(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+
+        int mask = capacity - 1;
+        for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+            int position = i * ENTRY_SIZE;
+            long value = table.getLong(position + 16);
+            if (value == 0) {
+                return -1;
+            }
+            if (table.getLong(position) == msb && table.getLong(position + 8) == lsb) {
+                return value - 1;
+            }
+        }
+    }
+
+    public void put(UUID id, long record) {
+        if ((size + 1) * 2 > capacity) {
+            resize();
+        }
+        if (insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), record + 1)) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean insert(long msb, long lsb, long value) {
+        int mask = capacity - 1;
+        for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+            int position = i * ENTRY_SIZE;
+            long current = table.getLong(position + 16);
+            if (current == 0) {
+                table.putLong(position, msb);
+                table.putLong(position + 8, lsb);
+                table.putLong(position + 16, value);
+                return true;
+            }
+            if (table.getLong(position) == msb && table.getLong(position + 8) == lsb) {
+                table.putLong(position + 16, value);
+                return false;
+            }
+        }
+    }
+
+    private void resize() {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(capacity * 2);
+
+        for (int i = 0; i < oldCapacity; i++) {
+            int position = i * ENTRY_SIZE;
+            long value = old.getLong(position + 16);
+            if (value != 0) {
+                insert(old.getLong(position), old.getLong(position + 8), value);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        this.table = ByteBuffer.allocateDirect(capacity * ENTRY_SIZE);
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int tableSizeFor(int size) {
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -0,0 +1,178 @@
+package org.monxef.gbank.storage.mapped;
+
+import org.monxef.gbank.objects.Money;
+import org.monxef.gbank.storage.codec.CurrencyDictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Fixed-size profile records packed into memory-mapped segment files.
+ * <p>
+ * Record layout: {@code [int state][int present mask][long msb][long lsb][16 x long]}.
+ * Each column holds a balance in units of 10^-{@value Money#MAX_SCALE}, so changing the
+ * decimals of a currency never loses stored precision. Records in the older
+ * state hold doubles instead, they are rounded when read and rewritten exact.
+ * Every currency gets a fixed column, the column order is kept in {@code currencies.txt}.
+ * Records are allocated sequentially and never moved, so the record number is
+ * the position across all segments. Not thread safe, callers synchronize.
+ */
+public class ProfileSegments {
+    public static final int MAX_CURRENCIES = 16;
+    private static final int RECORD_SIZE = 4 + 4 + 16 + MAX_CURRENCIES * 8;
+    private static final int STATE_DOUBLES = 1;
+    private static final int STATE_EXACT = 2;
+
+    private final File folder;
+    private final int recordsPerSegment;
+    private final List<MappedByteBuffer> segments;
+    private final CurrencyDictionary columns;
+    private final OffHeapIndex index;
+    private long nextRecord;
+
+    public ProfileSegments(File folder, int recordsPerSegment) throws IOException {
+        this.folder = folder;
+        this.segments = new ArrayList<>();
+
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        this.columns = new CurrencyDictionary(new File(folder, "currencies.txt"));
+
+        // Existing segments keep the size they were created with
+        File firstSegment = segmentFile(0);
+        this.recordsPerSegment = firstSegment.exists()
+                ? (int) (firstSegment.length() / RECORD_SIZE)
+                : recordsPerSegment;
+
+        File segmentFile;
+        while ((segmentFile = segmentFile(segments.size())).exists()) {
+            segments.add(map(segmentFile));
+        }
+
+        this.index = new OffHeapIndex(segments.size() * this.recordsPerSegment);
+        rebuildIndex();
+    }
+
+    /**
+     * @return The balances of the profile in minor units, or null if the profile has no record
+     */
+    public Map<String, Long> read(UUID playerId) throws IOException {
+        long record = index.get(playerId);
+        if (record < 0) {
+            return null;
+        }
+
+        MappedByteBuffer segment = segments.get((int) (record / recordsPerSegment));
+        int position = (int) (record % recordsPerSegment) * RECORD_SIZE;
+        boolean exact = segment.getInt(position) == STATE_EXACT;
+        int present = segment.getInt(position + 4);
+
+        Map<String, Long> balances = new HashMap<>();
+        for (int column = 0; column < columns.size(); column++) {
+            if ((present & (1 << column)) != 0) {
+                String currency = columns.currency(column);
+                int offset = position + 24 + column * 8;
+                balances.put(currency, exact
+                        ? Money.rescale(segment.getLong(offset), Money.MAX_SCALE, Money.scale(currency))
+                        : Money.of(segment.getDouble(offset), Money.scale(currency)));
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * @param balances Every balance of the profile in minor units, columns left out are cleared
+     */
+    public void write(UUID playerId, Map<String, Long> balances) throws IOException {
+        for (String currency : balances.keySet()) {
+            column(currency);
+        }
+
+        long record = index.get(playerId);
+        if (record < 0) {
+            record = allocate();
+        }
+
+        MappedByteBuffer segment = segments.get((int) (record / recordsPerSegment));
+        int position = (int) (record % recordsPerSegment) * RECORD_SIZE;
+
+        int present = 0;
+        for (Map.Entry<String, Long> entry : balances.entrySet()) {
+            int column = columns.indexOf(entry.getKey());
+            long amount = Money.rescale(entry.getValue(), Money.scale(entry.getKey()), Money.MAX_SCALE);
+            segment.putLong(position + 24 + column * 8, amount);
+            present |= 1 << column;
+        }
+
+        segment.putLong(position + 8, playerId.getMostSignificantBits());
+        segment.putLong(position + 16, playerId.getLeastSignificantBits());
+        segment.putInt(position + 4, present);
+        segment.putInt(position, STATE_EXACT);
+
+        index.put(playerId, record);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    private long allocate() throws IOException {
+        long record = nextRecord++;
+        if (record / recordsPerSegment >= segments.size()) {
+            segments.add(map(segmentFile(segments.size())));
+        }
+        return record;
+    }
+
+    private void rebuildIndex() {
+        for (int s = 0; s < segments.size(); s++) {
+            MappedByteBuffer segment = segments.get(s);
+            for (int r = 0; r < recordsPerSegment; r++) {
+                int position = r * RECORD_SIZE;
+                int state = segment.getInt(position);
+                if (state != STATE_EXACT && state != STATE_DOUBLES) {
+                    continue;
+                }
+
+                long record = (long) s * recordsPerSegment + r;
+                index.put(new UUID(segment.getLong(position + 8), segment.getLong(position + 16)), record);
+                nextRecord = record + 1;
+            }
+        }
+    }
+
+    private int column(String currency) throws IOException {
+        int column = columns.indexOf(currency);
+        if (column < 0 && columns.size() == MAX_CURRENCIES) {
+            throw new IOException("Mapped storage supports at most " + MAX_CURRENCIES + " currencies");
+        }
+        return column >= 0 ? column : columns.ordinal(currency);
+    }
+
+    private File segmentFile(int number) {
+        return new File(folder, String.format("segment-%05d.dat", number));
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.monxef.gbank.storage.reactive;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bridges reactive-streams publishers to futures, completing them from the
+ * driver's own callbacks without parking a thread per operation.
+ */
+public final class PublisherFutures {
+
+    private PublisherFutures() {
+    }
+
+    /**
+     * Completes the future with the first element, or null if the publisher is empty.
+     */
+    public static <T> CompletableFuture<T> first(Publisher<T> publisher, CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return future;
+        }
+
+        publisher.subscribe(new Subscriber<T>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(T item) {
+                future.complete(item);
+                subscription.cancel();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                future.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Completes the future with every element once the publisher completes.
+     */
+    public static <T> CompletableFuture<List<T>> collect(Publisher<T> publisher, CompletableFuture<List<T>> future) {
+        if (future.isDone()) {
+            return future;
+        }
+
+        publisher.subscribe(new Subscriber<T>() {
+            private final List<T> items = new ArrayList<>();
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                future.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(items);
+            }
+        });
+        return future;
+    }
+}
@@ -6,12 +6,10 @@ import org.bukkit.scheduler.BukkitRunnable;
 import org.monxef.gbank.GBank;
 import org.monxef.gbank.enums.ConfigurationType;
 import org.monxef.gbank.managers.PluginManager;
-import org.monxef.gbank.objects.PlayerProfile;
+import org.monxef.gbank.objects.Money;
 import org.monxef.gbank.wrappers.ConfigWrapper;
 
-import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 
 public class AutomaticPaymentTask extends BukkitRunnable {
     private final GBank plugin;
@@ -26,29 +24,24 @@ public class AutomaticPaymentTask extends BukkitRunnable {
 
     @Override
     public void run() {
+        int scale = Money.scale(defaultCurrency);
+        long minor = Money.of(amount, scale);
         for (Player player : Bukkit.getOnlinePlayers()) {
-            processPayment(player.getUniqueId());
+            processPayment(player.getUniqueId(), minor, scale);
         }
     }
 
-    private void processPayment(UUID playerId) {
-        CompletableFuture<Optional<PlayerProfile>> futureProfile = plugin.getStorageHandler().loadProfile(playerId);
-        
-        futureProfile.thenAccept(optionalProfile -> {
-            PlayerProfile profile = optionalProfile.orElseGet(() -> new PlayerProfile(playerId));
-            profile.addBalance(defaultCurrency, amount);
-            
-            plugin.getStorageHandler().saveProfile(profile).thenRun(() -> {
-                Player player = Bukkit.getPlayer(playerId);
-                if (player != null && player.isOnline()) {
-                    String message = ConfigWrapper.valueOf(ConfigurationType.MESSAGE).getConfig().getString("automatic_payment_received",
-                        "You received {amount} {currency} from automatic payment!")
-                        .replace("{amount}", String.format("%.2f", amount))
-                        .replace("{currency}", PluginManager.getInstance().getCurrenciesManager().get(defaultCurrency).getDisplayName());
-                    
-                    player.sendMessage(message);
-                }
-            });
+    private void processPayment(UUID playerId, long minor, int scale) {
+        plugin.getStorageHandler().credit(playerId, defaultCurrency, minor).thenRun(() -> {
+            Player player = Bukkit.getPlayer(playerId);
+            if (player != null && player.isOnline()) {
+                String message = ConfigWrapper.valueOf(ConfigurationType.MESSAGE).getConfig().getString("automatic_payment_received",
+                    "You received {amount} {currency} from automatic payment!")
+                    .replace("{amount}", Money.format(minor, scale))
+                    .replace("{currency}", PluginManager.getInstance().getCurrenciesManager().get(defaultCurrency).getDisplayName());
+                
+                player.sendMessage(message);
+            }
         });
     }
 }
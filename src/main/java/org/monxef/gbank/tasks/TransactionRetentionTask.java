@@ -0,0 +1,73 @@
+package org.monxef.gbank.tasks;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.monxef.gbank.GBank;
+import org.monxef.gbank.storage.cache.HistoryKey;
+import org.monxef.gbank.storage.history.RetentionPolicy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Removes transaction history beyond {@code transactions.audit-history-limit} and
+ * {@code transactions.retention.max-age-days}. Every run starts one small trim
+ * step on the storage thread and returns, the next run continues where it ended.
+ * Once every history was visited, the next pass waits for the pass interval.
+ */
+public class TransactionRetentionTask extends BukkitRunnable {
+    private final GBank plugin;
+    private final RetentionPolicy policy;
+    private final int batchSize;
+    private final long passIntervalMillis;
+    private final AtomicBoolean stepRunning = new AtomicBoolean();
+
+    private volatile HistoryKey cursor;
+    private volatile long nextPass;
+    private volatile int passAccounts;
+    private volatile long passRemoved;
+
+    public TransactionRetentionTask(GBank plugin, RetentionPolicy policy, int batchSize, Duration passInterval) {
+        this.plugin = plugin;
+        this.policy = policy;
+        this.batchSize = Math.max(1, batchSize);
+        this.passIntervalMillis = passInterval.toMillis();
+    }
+
+    @Override
+    public void run() {
+        if (System.currentTimeMillis() < nextPass || !stepRunning.compareAndSet(false, true)) {
+            return;
+        }
+
+        plugin.getTransactionLogger().trimTransactions(policy, cursor, batchSize).whenComplete((progress, error) -> {
+            try {
+                if (error != null) {
+                    plugin.getLogger().log(Level.WARNING, "Transaction retention step failed, retrying next pass", error);
+                    endPass();
+                    return;
+                }
+
+                passAccounts += progress.accounts();
+                passRemoved += progress.removed();
+                cursor = progress.next();
+                if (progress.isComplete()) {
+                    if (passRemoved > 0) {
+                        plugin.getLogger().info("Transaction retention removed " + passRemoved
+                                + " transactions from " + passAccounts + " histories.");
+                    }
+                    endPass();
+                }
+            } finally {
+                stepRunning.set(false);
+            }
+        });
+    }
+
+    private void endPass() {
+        cursor = null;
+        passAccounts = 0;
+        passRemoved = 0;
+        nextPass = System.currentTimeMillis() + passIntervalMillis;
+    }
+}